@@ -0,0 +1,147 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.acegisecurity.userdetails.UserDetails;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hudson.util.Secret;
+
+/**
+ * Benchmarks of the login and group-loading paths against a local {@link JiraStub}. Every path is measured with one
+ * caller and with many concurrent callers. Run with <code>mvn -Pbenchmark test-compile exec:exec</code>, which also
+ * enables the GC profiler for the allocation rate.
+ * 
+ * @author stephan.watermeyer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JiraAuthenticationBenchmark {
+
+    private static final String USERNAME = "bench";
+    private static final String PASSWORD = "secret";
+
+    /** Number of groups of the user returned by the stub. */
+    @Param({"10", "100", "1000"})
+    public int groups;
+
+    /** Latency of the stub in milliseconds. */
+    @Param({"0", "20"})
+    public long latency;
+
+    private JiraStub stub;
+    private JiraConnection connection;
+    private JiraAuthenticationService service;
+    private JiraSecurityRealm uncachedRealm;
+    private JiraSecurityRealm cachedRealm;
+    private MultivaluedMap<String, String> userParams;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        stub = new JiraStub(groups, latency, 64);
+        connection = new JiraConnection(stub.getUrl(), 10000, null, false, 64, null);
+        service = new JiraAuthenticationService(connection, USERNAME, Secret.fromString(PASSWORD));
+
+        uncachedRealm = new BenchmarkRealm(stub.getUrl(), service);
+        uncachedRealm.setUserCacheTtl(0);
+        cachedRealm = new BenchmarkRealm(stub.getUrl(), service);
+
+        userParams = new MultivaluedHashMap<String, String>();
+        userParams.putSingle("username", USERNAME);
+        userParams.putSingle("expand", "groups");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connection.close();
+        stub.stop();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public UserDetails authenticate() {
+        return uncachedRealm.authenticate(USERNAME, PASSWORD);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public UserDetails authenticateConcurrent() {
+        return uncachedRealm.authenticate(USERNAME, PASSWORD);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public UserDetails loadUserByUsername() {
+        return uncachedRealm.loadUserByUsername(USERNAME);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public UserDetails loadUserByUsernameConcurrent() {
+        return uncachedRealm.loadUserByUsername(USERNAME);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public UserDetails loadUserByUsernameCached() {
+        return cachedRealm.loadUserByUsername(USERNAME);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public UserDetails loadUserByUsernameCachedConcurrent() {
+        return cachedRealm.loadUserByUsername(USERNAME);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public JiraIdentity callService() {
+        return service.callService(USERNAME, PASSWORD, userParams);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public JiraIdentity callServiceConcurrent() {
+        return service.callService(USERNAME, PASSWORD, userParams);
+    }
+
+    /**
+     * A realm that uses the given service instead of resolving the technical user from the Jenkins credentials.
+     */
+    static class BenchmarkRealm extends JiraSecurityRealm {
+
+        private final transient JiraAuthenticationService benchmarkService;
+
+        BenchmarkRealm(String pUrl, JiraAuthenticationService pService) {
+            super(pUrl, null, 10000, false);
+            this.benchmarkService = pService;
+        }
+
+        @Override
+        JiraAuthenticationService getService() {
+            return benchmarkService;
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hudson.util.Secret;
+
+/**
+ * Measures the group lookup over a slow link to a hosted Jira, with and without a compressed response. The
+ * {@link JiraStub} adds the transfer time of the response at the given bandwidth, so the latency follows the bytes per
+ * lookup, which are printed at the end of every trial. A user with more than 1000 groups is loaded in pages.
+ * 
+ * @author stephan.watermeyer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class JiraCompressionBenchmark {
+
+    private static final String USERNAME = "bench";
+    private static final String PASSWORD = "secret";
+
+    /** Round trip time of the link in milliseconds. */
+    private static final long LATENCY = 50;
+
+    /** Bandwidth of the link, 1 MBit/s. */
+    private static final long BYTES_PER_SECOND = 125000;
+
+    /** Number of groups of the user returned by the stub. */
+    @Param({"100", "2500"})
+    public int groups;
+
+    @Param({"false", "true"})
+    public boolean compression;
+
+    private JiraStub stub;
+    private JiraConnection connection;
+    private JiraAuthenticationService service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        stub = new JiraStub(groups, LATENCY, 8);
+        stub.setCompression(compression);
+        stub.setBandwidth(BYTES_PER_SECOND);
+        connection = new JiraConnection(stub.getUrl(), 30000, null, false, 8, null);
+        service = new JiraAuthenticationService(connection, USERNAME, Secret.fromString(PASSWORD));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println("bytes per response: " + stub.getBytesPerRequest() + " (compression " + (compression ? "enabled" : "disabled") + ")");
+        connection.close();
+        stub.stop();
+    }
+
+    @Benchmark
+    public JiraIdentity loadUserByUsername() {
+        return service.loadUserByUsername(USERNAME);
+    }
+
+}
@@ -0,0 +1,90 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import hudson.util.Secret;
+
+/**
+ * Compares platform and virtual I/O threads with many logins in flight against a slow {@link JiraStub}. One invocation
+ * starts the given number of logins at once and waits for all of them, so the time per invocation is close to the
+ * latency of the stub as long as all logins are in flight together. The peak number of platform threads of the JVM is
+ * printed at the end of every trial. The virtual thread variant needs Java 21 or later, on older JVMs both variants use
+ * platform threads.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class JiraConcurrencyBenchmark {
+
+    private static final String USERNAME = "bench";
+    private static final String PASSWORD = "secret";
+
+    /** Latency of the stub in milliseconds, like a Jira under load. */
+    private static final long LATENCY = 200;
+
+    /** Number of logins started at once. */
+    @Param({"100", "1000"})
+    public int inFlight;
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    private JiraStub stub;
+    private JiraConnection connection;
+    private JiraAuthenticationService service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        stub = new JiraStub(10, LATENCY, inFlight);
+        // the pool is as large as the number of logins, so only the threads decide how many are in flight.
+        connection = new JiraConnection(stub.getUrl(), 30000, 30000, false, inFlight, null, virtualThreads);
+        service = new JiraAuthenticationService(connection, USERNAME, Secret.fromString(PASSWORD));
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.out.println("peak platform threads: " + threads.getPeakThreadCount() + " (virtual threads " + (virtualThreads && JiraThreads.isVirtualSupported()
+                ? "enabled" : "disabled") + ")");
+        connection.close();
+        stub.stop();
+    }
+
+    @Benchmark
+    public List<JiraIdentity> concurrentLogins() throws Exception {
+        final List<ListenableFuture<JiraIdentity>> logins = new ArrayList<ListenableFuture<JiraIdentity>>(inFlight);
+        for (int i = 0; i < inFlight; i++) {
+            logins.add(service.authenticateAsync(USERNAME, PASSWORD));
+        }
+        return Futures.allAsList(logins).get();
+    }
+
+}
@@ -0,0 +1,187 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP server that stands in for Jira in the benchmarks. It answers <code>rest/api/2/user</code> with a user
+ * that is a member of the configured number of groups, after the configured latency. Like Jira it returns at most 1000
+ * groups at once, further pages are requested with <code>expand=groups[start:end]</code>. The response is compressed
+ * if the client accepts gzip and compression is enabled, and it can be slowed down to the bandwidth of a WAN link.
+ * 
+ * @author stephan.watermeyer
+ *
+ */
+public class JiraStub {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Groups Jira returns at once. */
+    private static final int MAX_RESULTS = 1000;
+
+    private static final Pattern GROUP_PAGE = Pattern.compile("expand=groups\\[(\\d+):(\\d+)\\]");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final int groups;
+    private final byte[] userWithGroups;
+    private final byte[] userWithoutGroups;
+    private final long latencyInMS;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private volatile boolean compression = true;
+    private volatile long bytesPerSecond;
+
+    /**
+     * Starts the stub on a free local port.
+     * 
+     * @param pGroups
+     *            number of groups of the returned user.
+     * @param pLatencyInMS
+     *            time to wait before a response is sent.
+     * @param pThreads
+     *            number of threads serving requests.
+     * @throws IOException
+     *             if the server can not be started.
+     */
+    public JiraStub(int pGroups, long pLatencyInMS, int pThreads) throws IOException {
+        this.latencyInMS = pLatencyInMS;
+        this.groups = pGroups;
+        this.userWithGroups = userJson(pGroups, 0, Math.min(pGroups, MAX_RESULTS)).getBytes(UTF_8);
+        this.userWithoutGroups = userJson(-1, 0, 0).getBytes(UTF_8);
+
+        executor = Executors.newFixedThreadPool(pThreads);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.setExecutor(executor);
+        server.createContext("/rest/api/2/user", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange pExchange) throws IOException {
+                final String query = pExchange.getRequestURI().getQuery();
+                final Matcher page = GROUP_PAGE.matcher(query != null ? query : "");
+                byte[] body;
+                if (page.find()) {
+                    final int start = Math.min(Integer.parseInt(page.group(1)), groups);
+                    final int end = Math.min(Math.min(Integer.parseInt(page.group(2)), start + MAX_RESULTS), groups);
+                    body = userJson(groups, start, end).getBytes(UTF_8);
+                } else {
+                    body = query != null && query.contains("expand=groups") ? userWithGroups : userWithoutGroups;
+                }
+
+                final String accepted = pExchange.getRequestHeaders().getFirst("Accept-Encoding");
+                if (compression && accepted != null && accepted.contains("gzip")) {
+                    body = gzip(body);
+                    pExchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+                requests.incrementAndGet();
+                bytesSent.addAndGet(body.length);
+
+                // the transfer time of a slow link is added to the latency.
+                final long delay = latencyInMS + (bytesPerSecond > 0 ? TimeUnit.SECONDS.toMillis(body.length) / bytesPerSecond : 0);
+                if (delay > 0) {
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                pExchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+                pExchange.sendResponseHeaders(200, body.length);
+                final OutputStream out = pExchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    public int getResponseSize() {
+        return userWithGroups.length;
+    }
+
+    /**
+     * @param pCompression
+     *            FALSE to ignore the <code>Accept-Encoding</code> of the client.
+     */
+    public void setCompression(boolean pCompression) {
+        this.compression = pCompression;
+    }
+
+    /**
+     * @param pBytesPerSecond
+     *            bandwidth of the simulated link, 0 for no limit.
+     */
+    public void setBandwidth(long pBytesPerSecond) {
+        this.bytesPerSecond = pBytesPerSecond;
+    }
+
+    /**
+     * @return average number of body bytes sent per request.
+     */
+    public long getBytesPerRequest() {
+        final long count = requests.get();
+        return count > 0 ? bytesSent.get() / count : 0;
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static byte[] gzip(byte[] pBody) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(pBody.length / 4);
+        final GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(pBody);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Builds a user like Jira returns it, including the fields the plugin does not use.
+     * 
+     * @param pGroups
+     *            number of groups of the user, -1 to leave the groups out.
+     * @param pStart
+     *            index of the first group in the response.
+     * @param pEnd
+     *            index after the last group in the response.
+     */
+    static String userJson(int pGroups, int pStart, int pEnd) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("{\"self\":\"http://jira/rest/api/2/user?username=bench\",\"key\":\"bench\",\"name\":\"bench\",");
+        sb.append("\"emailAddress\":\"bench@example.com\",\"avatarUrls\":{\"48x48\":\"http://jira/secure/useravatar?avatarId=1\",");
+        sb.append("\"24x24\":\"http://jira/secure/useravatar?size=small&avatarId=1\"},\"displayName\":\"Bench User\",");
+        sb.append("\"active\":true,\"timeZone\":\"Europe/Berlin\",\"locale\":\"en_US\"");
+        if (pGroups >= 0) {
+            sb.append(",\"groups\":{\"size\":").append(pGroups).append(",\"items\":[");
+            for (int i = pStart; i < pEnd; i++) {
+                if (i > pStart) {
+                    sb.append(',');
+                }
+                // users share the same groups, so the names repeat across calls like in a real Jira.
+                sb.append("{\"name\":\"group-").append(i).append("\",\"self\":\"http://jira/rest/api/2/group?groupname=group-").append(i).append("\"}");
+            }
+            sb.append("],\"max-results\":").append(MAX_RESULTS).append("}");
+        }
+        sb.append(",\"expand\":\"groups,applicationRoles\"}");
+        return sb.toString();
+    }
+
+}
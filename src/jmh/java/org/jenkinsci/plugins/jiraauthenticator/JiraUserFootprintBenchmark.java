@@ -0,0 +1,75 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.acegisecurity.GrantedAuthority;
+import org.acegisecurity.GrantedAuthorityImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hudson.security.SecurityRealm;
+
+/**
+ * Compares the memory of a user with its own list of new authorities against a user with an interned
+ * {@link JiraAuthoritySet}. With the GC profiler, <code>gc.alloc.rate.norm</code> is the number of bytes allocated to
+ * build one user from its group names and to read its authorities once.
+ * 
+ * @author stephan.watermeyer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JiraUserFootprintBenchmark {
+
+    /** Number of groups of a user. */
+    @Param({"10", "100"})
+    public int groups;
+
+    private String[] groupNames;
+
+    @Setup
+    public void setUp() {
+        groupNames = new String[groups];
+        for (int i = 0; i < groups; i++) {
+            groupNames[i] = "group-" + i;
+        }
+    }
+
+    /**
+     * A user like it was built before authorities were shared: new authorities and a copy on every call.
+     */
+    @Benchmark
+    public GrantedAuthority[] copiedAuthorities() {
+        final List<GrantedAuthority> authorities = new ArrayList<GrantedAuthority>();
+        authorities.add(SecurityRealm.AUTHENTICATED_AUTHORITY);
+        for (String group : groupNames) {
+            authorities.add(new GrantedAuthorityImpl(group));
+        }
+        return authorities.toArray(new GrantedAuthority[authorities.size()]);
+    }
+
+    @Benchmark
+    public GrantedAuthority[] sharedAuthorities() {
+        final List<GrantedAuthority> authorities = new ArrayList<GrantedAuthority>(groupNames.length);
+        for (String group : groupNames) {
+            authorities.add(JiraAuthorities.intern(group));
+        }
+        return new JiraUser("bench", JiraAuthorities.forGroups(authorities)).getAuthorities();
+    }
+
+}
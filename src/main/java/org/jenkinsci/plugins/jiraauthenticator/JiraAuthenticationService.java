@@ -1,42 +1,64 @@
 package org.jenkinsci.plugins.jiraauthenticator;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.SocketTimeoutException;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedHashMap;
 import javax.ws.rs.core.MultivaluedMap;
-import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.core.Response;
 
 import org.acegisecurity.AuthenticationException;
 import org.acegisecurity.AuthenticationServiceException;
+import org.acegisecurity.GrantedAuthority;
 import org.acegisecurity.BadCredentialsException;
+import org.acegisecurity.userdetails.UsernameNotFoundException;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.commons.lang.StringUtils;
-import org.jenkinsci.plugins.jiraauthenticator.beans.JiraResponseGeneral;
-
-import com.google.gson.Gson;
-import com.sun.jersey.api.client.Client;
-import com.sun.jersey.api.client.ClientHandlerException;
-import com.sun.jersey.api.client.UniformInterfaceException;
-import com.sun.jersey.api.client.WebResource;
-import com.sun.jersey.api.client.config.ClientConfig;
-import com.sun.jersey.api.client.config.DefaultClientConfig;
-import com.sun.jersey.api.client.filter.HTTPBasicAuthFilter;
-import com.sun.jersey.client.urlconnection.HTTPSProperties;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.glassfish.jersey.client.authentication.HttpAuthenticationFeature;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.gson.stream.JsonReader;
 
 import hudson.util.Secret;
 
 /**
  * Service class wraps the functionality to connect to a Jira instance. This class makes use of a technical user that is
  * used to contact Jira.
+ * <p>
+ * Every call is asynchronous underneath, the blocking methods wait for their <code>*Async</code> counterpart.
  * 
  * @author stephan.watermeyer
  *
@@ -46,35 +68,64 @@ public class JiraAuthenticationService {
     private static final String PARAM_VAL_GROUPS = "groups";
     private static final String PARAM_KEY_EXPAND = "expand";
     private static final String PARAM_KEY_USERNAME = "username";
+    private static final String PARAM_KEY_GROUPNAME = "groupname";
+    private static final String PARAM_KEY_START_AT = "startAt";
+    private static final String PARAM_KEY_MAX_RESULTS = "maxResults";
+
+    private static final String PATH_USER = "user/";
+    private static final String PATH_GROUPS_PICKER = "groups/picker";
+    private static final String PATH_GROUP_MEMBER = "group/member";
+
+    /** Upper limit of groups requested from the group picker. Jira may limit this further. */
+    private static final int MAX_GROUPS = 10000;
+
+    /** Groups per page if a user has more groups than Jira returns at once, Jira returns at most 1000. */
+    static final int GROUP_PAGE_SIZE = 1000;
 
     private static final Logger LOG = Logger.getLogger(JiraSecurityRealm.class.getName());
-    private final String mUrl;
+    private final JiraEndpoints mEndpoints;
     private final String mTechnicalUserName;
     private final Secret mTechnicalUserPassword;
-    private final Integer mTimeoutInMS;
-    private final boolean mInsecureConnection;
+    private final JiraCircuitBreaker mCircuitBreaker;
+    private final JiraBulkhead mBulkhead;
+    private final ConcurrentMap<String, ListenableFuture<JiraIdentity>> mPendingUserLoads = new ConcurrentHashMap<String, ListenableFuture<JiraIdentity>>();
 
     /**
      * Default constructor.
      * 
-     * @param pURL
-     *            the URL of Jira.
+     * @param pConnection
+     *            the pooled connection to Jira.
+     * @param pTechnicalUserName
+     *            technical user name
+     * @param pTechnicalUserPassword
+     *            password of the technical user.
+     */
+    public JiraAuthenticationService(JiraConnection pConnection, String pTechnicalUserName, Secret pTechnicalUserPassword) {
+        this(new JiraEndpoints(Collections.singletonList(pConnection)), pTechnicalUserName, pTechnicalUserPassword, null, null);
+    }
+
+    /**
+     * Constructor with several Jira nodes and a circuit breaker and a bulkhead around all calls.
+     * 
+     * @param pEndpoints
+     *            the Jira nodes, each with its own connection pool.
      * @param pTechnicalUserName
      *            technical user name
      * @param pTechnicalUserPassword
      *            password of the technical user.
-     * @param pTimeoutInMS
-     *            timeout in MS
-     * @param pInsecureConnections
-     *            TRUE to allow insecure TLS connections.
+     * @param pCircuitBreaker
+     *            the circuit breaker or <code>null</code>.
+     * @param pBulkhead
+     *            limits the concurrent calls or <code>null</code>.
      */
-    public JiraAuthenticationService(String pURL, String pTechnicalUserName, Secret pTechnicalUserPassword, Integer pTimeoutInMS, boolean pInsecureConnections) {
+    JiraAuthenticationService(JiraEndpoints pEndpoints, String pTechnicalUserName, Secret pTechnicalUserPassword, JiraCircuitBreaker pCircuitBreaker,
+            JiraBulkhead pBulkhead) {
         super();
-        this.mUrl = pURL;
+        this.mEndpoints = pEndpoints;
         this.mTechnicalUserName = pTechnicalUserName;
         this.mTechnicalUserPassword = pTechnicalUserPassword;
-        this.mTimeoutInMS = pTimeoutInMS;
-        this.mInsecureConnection = pInsecureConnections;
+        this.mCircuitBreaker = pCircuitBreaker;
+        this.mBulkhead = pBulkhead;
     }
 
     /**
@@ -86,13 +137,137 @@ public class JiraAuthenticationService {
      * @throws AuthenticationException
      *             TBD.
      */
-    public JiraResponseGeneral loadUserByUsername(final String pUsername) throws AuthenticationException {
+    public JiraIdentity loadUserByUsername(final String pUsername) throws AuthenticationException {
+        return await(loadUserByUsernameAsync(pUsername));
+    }
+
+    /**
+     * Get a user gruops without blocking the calling thread. Concurrent lookups of the same user are merged into one
+     * call.
+     * 
+     * @param pUsername
+     *            the user whos groups should be loaded
+     * @return the pending response from Jira, fails with an {@link AuthenticationException}.
+     */
+    public ListenableFuture<JiraIdentity> loadUserByUsernameAsync(final String pUsername) {
+        return loadUserByUsernameAsync(pUsername, null);
+    }
+
+    /**
+     * Get a user gruops, or only whether they have changed since the given version.
+     * 
+     * @param pUsername
+     *            the user whos groups should be loaded
+     * @param pPrevious
+     *            the cached version of the user or <code>null</code>.
+     * @return response from Jira, {@link JiraIdentity#isUnchanged()} if the user is the same as the previous version.
+     * @throws AuthenticationException
+     *             TBD.
+     */
+    public JiraIdentity loadUserByUsername(final String pUsername, final JiraUser pPrevious) throws AuthenticationException {
+        return await(loadUserByUsernameAsync(pUsername, pPrevious));
+    }
+
+    /**
+     * Get a user gruops, or only whether they have changed since the given version, without blocking the calling
+     * thread. Only lookups without a previous version are merged, because their result does not depend on the caller.
+     * 
+     * @param pUsername
+     *            the user whos groups should be loaded
+     * @param pPrevious
+     *            the cached version of the user or <code>null</code>.
+     * @return the pending response from Jira, fails with an {@link AuthenticationException}.
+     */
+    public ListenableFuture<JiraIdentity> loadUserByUsernameAsync(final String pUsername, final JiraUser pPrevious) {
         final MultivaluedMap<String, String> requestParams = new MultivaluedHashMap<String, String>();
         requestParams.putSingle(PARAM_KEY_USERNAME, pUsername);
         requestParams.putSingle(PARAM_KEY_EXPAND, PARAM_VAL_GROUPS);
 
+        if (pPrevious != null) {
+            return callServiceAsync(mTechnicalUserName, mTechnicalUserPassword.getPlainText(), requestParams, new JiraUserReader(pPrevious));
+        }
+
+        final SettableFuture<JiraIdentity> created = SettableFuture.create();
+        final ListenableFuture<JiraIdentity> pending = mPendingUserLoads.putIfAbsent(pUsername, created);
+        if (pending != null) {
+            return pending;
+        }
+
         // use the technical user to retrieve the groups of a given username.
-        return callService(mTechnicalUserName, mTechnicalUserPassword.getPlainText(), requestParams);
+        final ListenableFuture<JiraIdentity> call = callServiceAsync(mTechnicalUserName, mTechnicalUserPassword.getPlainText(), requestParams);
+        call.addListener(new Runnable() {
+            @Override
+            public void run() {
+                mPendingUserLoads.remove(pUsername, created);
+                complete(call, created);
+            }
+        }, MoreExecutors.sameThreadExecutor());
+        return created;
+    }
+
+    /**
+     * Get the groups of many users without blocking the calling thread. At most the given number of lookups are sent
+     * at the same time, the next lookup is sent as soon as one has been answered. Jira has no bulk endpoint that
+     * returns the groups of several users, so this pipelines the single lookups instead of sending them one by one.
+     * 
+     * @param pUsernames
+     *            the users whos groups should be loaded, duplicates are loaded once.
+     * @param pParallelism
+     *            maximum number of lookups at the same time.
+     * @param pExecutor
+     *            sends the next lookup once one has been answered, so that an I/O thread never waits for the bulkhead.
+     * @return the pending response of every user in the order of the usernames, each fails with an
+     *         {@link AuthenticationException}.
+     */
+    public Map<String, ListenableFuture<JiraIdentity>> loadUsersByUsernameAsync(Collection<String> pUsernames, int pParallelism, Executor pExecutor) {
+        final Map<String, SettableFuture<JiraIdentity>> results = new LinkedHashMap<String, SettableFuture<JiraIdentity>>();
+        for (String current : pUsernames) {
+            if (!results.containsKey(current)) {
+                results.put(current, SettableFuture.<JiraIdentity> create());
+            }
+        }
+
+        final Iterator<Map.Entry<String, SettableFuture<JiraIdentity>>> queue = new ArrayList<Map.Entry<String, SettableFuture<JiraIdentity>>>(
+                results.entrySet()).iterator();
+        for (int i = 0; i < Math.min(Math.max(pParallelism, 1), results.size()); i++) {
+            loadNext(queue, pExecutor);
+        }
+        return Collections.<String, ListenableFuture<JiraIdentity>> unmodifiableMap(results);
+    }
+
+    private void loadNext(final Iterator<Map.Entry<String, SettableFuture<JiraIdentity>>> pQueue, final Executor pExecutor) {
+        final Map.Entry<String, SettableFuture<JiraIdentity>> next;
+        synchronized (pQueue) {
+            if (!pQueue.hasNext()) {
+                return;
+            }
+            next = pQueue.next();
+        }
+
+        final ListenableFuture<JiraIdentity> call = loadUserByUsernameAsync(next.getKey());
+        call.addListener(new Runnable() {
+            @Override
+            public void run() {
+                complete(call, next.getValue());
+                loadNext(pQueue, pExecutor);
+            }
+        }, pExecutor);
+    }
+
+    /**
+     * Passes the outcome of a finished call on.
+     */
+    private static <T> void complete(ListenableFuture<T> pCall, SettableFuture<T> pResult) {
+        try {
+            pResult.set(pCall.get());
+        } catch (ExecutionException e) {
+            pResult.setException(e.getCause());
+        } catch (CancellationException e) {
+            pResult.cancel(false);
+        } catch (InterruptedException e) {
+            // the call is done, get() does not block.
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -106,84 +281,577 @@ public class JiraAuthenticationService {
      * @throws AuthenticationException
      *             if something goes wrong.
      */
-    public JiraResponseGeneral authenticate(final String pUsername, final String pPassword) throws AuthenticationException {
+    public JiraIdentity authenticate(final String pUsername, final String pPassword) throws AuthenticationException {
+        return await(authenticateAsync(pUsername, pPassword));
+    }
+
+    /**
+     * To authenticate a user without blocking the calling thread.
+     * 
+     * @param pUsername
+     *            the users username.
+     * @param pPassword
+     *            the users password in clear text.
+     * @return the pending response from Jira, fails with an {@link AuthenticationException}.
+     */
+    public ListenableFuture<JiraIdentity> authenticateAsync(final String pUsername, final String pPassword) {
         final MultivaluedMap<String, String> requestParams = new MultivaluedHashMap<String, String>();
         requestParams.putSingle(PARAM_KEY_USERNAME, pUsername);
 
         // here we pass the given credentials. because we dont want to authorize the technical user
-        return callService(pUsername, pPassword, requestParams);
+        return callServiceAsync(pUsername, pPassword, requestParams);
     }
 
-    JiraResponseGeneral callService(final String pUsername, final String pPassword, MultivaluedMap<String, String> pRequestParams) {
+    /**
+     * Loads the names of all groups in Jira. The group picker has no paging, so if Jira has more groups than it
+     * returns at once, the list is incomplete and the call fails instead of returning part of the groups.
+     * 
+     * @return the group names.
+     * @throws AuthenticationException
+     *             if something goes wrong or Jira has returned only part of the groups.
+     */
+    public List<String> loadGroupNames() throws AuthenticationException {
+        final MultivaluedMap<String, String> requestParams = new MultivaluedHashMap<String, String>();
+        requestParams.putSingle(PARAM_KEY_MAX_RESULTS, String.valueOf(MAX_GROUPS));
+
+        // the total is checked once the call is done, an incomplete list is no failure of Jira.
+        final AtomicInteger total = new AtomicInteger(-1);
+        final List<String> groups = callService(PATH_GROUPS_PICKER, mTechnicalUserName, mTechnicalUserPassword.getPlainText(), requestParams, new ResponseReader<List<String>>() {
+            @Override
+            public List<String> read(JsonReader pReader) throws IOException {
+                final List<String> groups = new ArrayList<String>();
+                pReader.beginObject();
+                while (pReader.hasNext()) {
+                    final String field = pReader.nextName();
+                    if ("groups".equals(field)) {
+                        pReader.beginArray();
+                        while (pReader.hasNext()) {
+                            final String name = readName(pReader);
+                            if (name != null) {
+                                groups.add(name);
+                            }
+                        }
+                        pReader.endArray();
+                    } else if ("total".equals(field)) {
+                        total.set(pReader.nextInt());
+                    } else {
+                        pReader.skipValue();
+                    }
+                }
+                pReader.endObject();
+                return groups;
+            }
+        });
+        if (total.get() > groups.size()) {
+            throw new AuthenticationServiceException("Jira has returned only " + groups.size() + " of " + total.get() + " groups");
+        }
+        return groups;
+    }
+
+    /**
+     * Loads one page of the members of a group. The members are passed to the visitor while the response is read.
+     * 
+     * @param pGroupname
+     *            the group.
+     * @param pStartAt
+     *            index of the first member to load.
+     * @param pMaxResults
+     *            size of the page.
+     * @param pVisitor
+     *            receives the username of every member.
+     * @return TRUE if there are more pages.
+     * @throws AuthenticationException
+     *             if something goes wrong.
+     */
+    public boolean loadGroupMembers(final String pGroupname, int pStartAt, final int pMaxResults, final MemberVisitor pVisitor) throws AuthenticationException {
+        return await(loadGroupMembersAsync(pGroupname, pStartAt, pMaxResults, pVisitor));
+    }
+
+    /**
+     * Loads one page of the members of a group without blocking the calling thread. The visitor is called on the I/O
+     * thread that reads the response.
+     * 
+     * @param pGroupname
+     *            the group.
+     * @param pStartAt
+     *            index of the first member to load.
+     * @param pMaxResults
+     *            size of the page.
+     * @param pVisitor
+     *            receives the username of every member.
+     * @return TRUE if there are more pages, fails with an {@link AuthenticationException}.
+     */
+    public ListenableFuture<Boolean> loadGroupMembersAsync(final String pGroupname, int pStartAt, final int pMaxResults, final MemberVisitor pVisitor) {
+        final MultivaluedMap<String, String> requestParams = new MultivaluedHashMap<String, String>();
+        requestParams.putSingle(PARAM_KEY_GROUPNAME, pGroupname);
+        requestParams.putSingle(PARAM_KEY_START_AT, String.valueOf(pStartAt));
+        requestParams.putSingle(PARAM_KEY_MAX_RESULTS, String.valueOf(pMaxResults));
+
+        return callServiceAsync(PATH_GROUP_MEMBER, mTechnicalUserName, mTechnicalUserPassword.getPlainText(), requestParams, new ResponseReader<Boolean>() {
+            @Override
+            public Boolean read(JsonReader pReader) throws IOException {
+                boolean isLast = false;
+                int count = 0;
+                pReader.beginObject();
+                while (pReader.hasNext()) {
+                    final String field = pReader.nextName();
+                    if ("isLast".equals(field)) {
+                        isLast = pReader.nextBoolean();
+                    } else if ("values".equals(field)) {
+                        pReader.beginArray();
+                        while (pReader.hasNext()) {
+                            final String name = readName(pReader);
+                            if (name != null) {
+                                pVisitor.member(pGroupname, name);
+                            }
+                            count++;
+                        }
+                        pReader.endArray();
+                    } else {
+                        pReader.skipValue();
+                    }
+                }
+                pReader.endObject();
+                return !isLast && count >= pMaxResults;
+            }
+        });
+    }
+
+    JiraIdentity callService(final String pUsername, final String pPassword, MultivaluedMap<String, String> pRequestParams) {
+        return await(callServiceAsync(pUsername, pPassword, pRequestParams));
+    }
+
+    ListenableFuture<JiraIdentity> callServiceAsync(final String pUsername, final String pPassword, MultivaluedMap<String, String> pRequestParams) {
+        return callServiceAsync(pUsername, pPassword, pRequestParams, JiraUserReader.INSTANCE);
+    }
+
+    /**
+     * Loads a user. If Jira has returned only the first page of its groups, the other pages are loaded one after the
+     * other before the user is returned. The lookup takes one slot of the bulkhead on the calling thread and holds it
+     * until the last page has been answered, so the pages, which are sent from the I/O threads, never wait for the
+     * bulkhead and a paged lookup still counts as one call in flight.
+     */
+    private ListenableFuture<JiraIdentity> callServiceAsync(final String pUsername, final String pPassword,
+            final MultivaluedMap<String, String> pRequestParams, JiraUserReader pReader) {
         try {
-            ClientConfig config = initSSLConfig(mInsecureConnection);
-            Client client = Client.create(config);
+            if (mBulkhead != null) {
+                mBulkhead.acquire();
+            }
+        } catch (AuthenticationServiceException e) {
+            return Futures.immediateFailedFuture(e);
+        }
 
-            if (StringUtils.isNotEmpty(pUsername) && StringUtils.isNotEmpty(pPassword)) {
-                LOG.fine("setting username to: " + pUsername);
-                client.addFilter(new HTTPBasicAuthFilter(pUsername, pPassword));
-            } else {
-                throw new AuthenticationServiceException("no username and password provided");
+        final ListenableFuture<JiraIdentity> first = callServiceAsync(PATH_USER, pUsername, pPassword, pRequestParams, pReader, false);
+        final ListenableFuture<JiraIdentity> result = Futures.transform(first, new AsyncFunction<JiraIdentity, JiraIdentity>() {
+            @Override
+            public ListenableFuture<JiraIdentity> apply(final JiraIdentity pFirst) {
+                if (!pFirst.hasMoreGroups()) {
+                    return Futures.immediateFuture(pFirst);
+                }
+                LOG.log(Level.FINE, "user {0} has {1} groups, loading them in pages", new Object[] {pFirst.getName(), pFirst.getTotalGroups()});
+                final List<GrantedAuthority> groups = new ArrayList<GrantedAuthority>(pFirst.getGroups());
+                final ListenableFuture<Void> pages = loadGroupPages(pUsername, pPassword, pRequestParams, groups, pFirst.getTotalGroups());
+                return Futures.transform(pages, new Function<Void, JiraIdentity>() {
+                    @Override
+                    public JiraIdentity apply(Void pNone) {
+                        // no version, the entity tag of Jira covers only the first page.
+                        return new JiraIdentity(pFirst.getName(), groups, null, groups.size());
+                    }
+                });
             }
+        });
+        if (mBulkhead != null) {
+            result.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    mBulkhead.release();
+                }
+            }, MoreExecutors.sameThreadExecutor());
+        }
+        return result;
+    }
 
-            client.setReadTimeout(mTimeoutInMS);
-            WebResource mInstance = client.resource(UriBuilder.fromUri(mUrl).build());
-            mInstance = mInstance.path("rest/api/2/user/");
+    /**
+     * Loads the pages of the groups of a user that follow the given groups. A page is requested with
+     * <code>expand=groups[start:end]</code> and the next page starts after the groups Jira has actually returned, so
+     * the paging does not depend on whether Jira counts the end inclusive. The pages are requested from the I/O thread
+     * of the previous page under the bulkhead slot of the whole lookup, they are only asked the circuit breaker.
+     */
+    private ListenableFuture<Void> loadGroupPages(final String pUsername, final String pPassword, final MultivaluedMap<String, String> pRequestParams,
+            final List<GrantedAuthority> pGroups, final int pTotal) {
+        final int start = pGroups.size();
+        final MultivaluedMap<String, String> requestParams = new MultivaluedHashMap<String, String>(pRequestParams);
+        requestParams.putSingle(PARAM_KEY_EXPAND, PARAM_VAL_GROUPS + "[" + start + ":" + (start + GROUP_PAGE_SIZE) + "]");
 
-            final String serviceResponse = mInstance.queryParams(pRequestParams).accept(MediaType.APPLICATION_JSON).get(String.class);
-            if (LOG.isLoggable(Level.FINE)) {
-                LOG.fine(serviceResponse.toString());
+        final ListenableFuture<Integer> page = callServiceAsync(PATH_USER, pUsername, pPassword, requestParams, new ResponseReader<Integer>() {
+            @Override
+            public Integer read(JsonReader pReader) throws IOException {
+                return JiraUserReader.readGroupPage(pReader, pGroups);
             }
+        }, false);
+        return Futures.transform(page, new AsyncFunction<Integer, Void>() {
+            @Override
+            public ListenableFuture<Void> apply(Integer pCount) {
+                if (pCount > 0 && pGroups.size() < pTotal) {
+                    return loadGroupPages(pUsername, pPassword, pRequestParams, pGroups, pTotal);
+                }
+                return Futures.immediateFuture(null);
+            }
+        });
+    }
 
-            JiraResponseGeneral parsedResponsed = new Gson().fromJson(serviceResponse, JiraResponseGeneral.class);
+    <T> T callService(final String pPath, final String pUsername, final String pPassword, MultivaluedMap<String, String> pRequestParams, ResponseReader<T> pReader) {
+        return await(callServiceAsync(pPath, pUsername, pPassword, pRequestParams, pReader));
+    }
 
-            if (LOG.isLoggable(Level.FINE)) {
-                LOG.fine(parsedResponsed.toString());
+    /**
+     * Calls Jira without blocking the calling thread. The bulkhead and the circuit breaker are asked on the calling
+     * thread, the request is sent and the response is read on the I/O threads of the connection. The trace of the
+     * calling thread, if any, travels with the request.
+     */
+    <T> ListenableFuture<T> callServiceAsync(final String pPath, final String pUsername, final String pPassword,
+            final MultivaluedMap<String, String> pRequestParams, final ResponseReader<T> pReader) {
+        return callServiceAsync(pPath, pUsername, pPassword, pRequestParams, pReader, true);
+    }
+
+    /**
+     * @param pAdmit
+     *            FALSE if the caller holds a slot of the bulkhead for this call and releases it itself, the call is
+     *            only asked the circuit breaker then.
+     */
+    private <T> ListenableFuture<T> callServiceAsync(final String pPath, final String pUsername, final String pPassword,
+            final MultivaluedMap<String, String> pRequestParams, final ResponseReader<T> pReader, boolean pAdmit) {
+        if (StringUtils.isEmpty(pUsername) || StringUtils.isEmpty(pPassword)) {
+            return Futures.immediateFailedFuture(new AuthenticationServiceException("no username and password provided"));
+        }
+
+        final JiraTrace trace = JiraTrace.current();
+        final boolean admitted = pAdmit && mBulkhead != null;
+        try {
+            if (admitted) {
+                mBulkhead.acquire();
             }
+        } catch (AuthenticationServiceException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+        if (mCircuitBreaker != null && !mCircuitBreaker.tryAcquire()) {
+            if (admitted) {
+                mBulkhead.release();
+            }
+            return Futures.immediateFailedFuture(new AuthenticationServiceException("Jira is not available, the circuit breaker is open"));
+        }
+
+        if (trace != null) {
+            trace.mark(JiraTrace.Phase.ADMISSION);
+        }
+
+        final PendingCall<T> call = new PendingCall<T>(pPath, trace, admitted);
+        send(call, pPath, pUsername, pPassword, pRequestParams, pReader, new ArrayList<JiraEndpoints.Endpoint>());
+        return call.mResult;
+    }
 
-            return parsedResponsed;
-        } catch (ClientHandlerException e) {
-            if (e.getCause() != null && e.getCause() instanceof SocketTimeoutException) {
-                throw new AuthenticationServiceException("Timeout limit reached while contacing Jira: " + mTimeoutInMS + "ms", e);
+    /**
+     * Sends the request to the best endpoint. If the endpoint does not answer, the request fails over to the next
+     * endpoint that has not been tried for this call. All requests are GETs, so repeating them is safe.
+     */
+    private <T> void send(final PendingCall<T> pCall, final String pPath, final String pUsername, final String pPassword,
+            final MultivaluedMap<String, String> pRequestParams, final ResponseReader<T> pReader, final List<JiraEndpoints.Endpoint> pTried) {
+        final JiraEndpoints.Endpoint endpoint = mEndpoints.select(pTried);
+        pTried.add(endpoint);
+        final JiraConnection connection = endpoint.getConnection();
+        final long start = System.nanoTime();
+        endpoint.start();
+        try {
+            WebTarget target = connection.getTarget().path(pPath);
+            for (Map.Entry<String, List<String>> current : pRequestParams.entrySet()) {
+                target = target.queryParam(current.getKey(), current.getValue().toArray());
+            }
+
+            LOG.fine("setting username to: " + pUsername);
+            final Invocation.Builder builder = target.request(MediaType.APPLICATION_JSON_TYPE)
+                    .property(HttpAuthenticationFeature.HTTP_AUTHENTICATION_BASIC_USERNAME, pUsername)
+                    .property(HttpAuthenticationFeature.HTTP_AUTHENTICATION_BASIC_PASSWORD, pPassword);
+            final ConditionalReader<T> conditional = pReader instanceof ConditionalReader ? (ConditionalReader<T>) pReader : null;
+            if (conditional != null && conditional.getVersion() != null) {
+                builder.header(HttpHeaders.IF_NONE_MATCH, conditional.getVersion());
+            }
+            if (pCall.mTrace != null) {
+                pCall.mTrace.setEndpoint(connection.getUrl());
+                builder.property(JiraTrace.PROPERTY, pCall.mTrace);
+            }
+
+            final Future<Response> request = builder.async().get(new InvocationCallback<Response>() {
+                @Override
+                public void completed(Response pResponse) {
+                    JiraTrace.attach(null);
+                    final int status = pResponse.getStatus();
+                    if (status == 304 && conditional != null && conditional.getVersion() != null) {
+                        endpoint.finish(start, true);
+                        pResponse.close();
+                        pCall.succeed(conditional.notModified());
+                        return;
+                    } else if (pResponse.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+                        pResponse.close();
+                        failed(new WebApplicationException(pResponse));
+                        return;
+                    }
+
+                    endpoint.finish(start, true);
+                    InputStream in = null;
+                    try {
+                        in = pResponse.readEntity(InputStream.class);
+                        // only sampled calls count the bytes of the response.
+                        final CountingInputStream counter = pCall.mTrace != null ? new CountingInputStream(in) : null;
+                        final JsonReader reader = new JsonReader(new InputStreamReader(counter != null ? counter : in, "UTF-8"));
+                        final T result = conditional != null ? conditional.read(reader, pResponse.getHeaderString(HttpHeaders.ETAG)) : pReader.read(reader);
+                        if (counter != null) {
+                            pCall.mTrace.mark(JiraTrace.Phase.PARSE);
+                            pCall.mTrace.setResponseSize(counter.getByteCount());
+                        }
+                        pCall.succeed(result);
+                    } catch (Exception e) {
+                        pCall.fail(translate(e, connection, pUsername, pRequestParams));
+                    } finally {
+                        IOUtils.closeQuietly(in);
+                        pResponse.close();
+                    }
+                }
+
+                @Override
+                public void failed(Throwable pError) {
+                    JiraTrace.attach(null);
+                    final boolean unreachable = isUnreachable(pError);
+                    endpoint.finish(start, !unreachable);
+                    if (unreachable && pTried.size() < mEndpoints.size() && !pCall.mResult.isDone()) {
+                        LOG.log(Level.WARNING, "Jira node {0} did not answer, failing over: {1}", new Object[] {connection.getUrl(), pError.getMessage()});
+                        send(pCall, pPath, pUsername, pPassword, pRequestParams, pReader, pTried);
+                    } else {
+                        pCall.fail(translate(pError, connection, pUsername, pRequestParams));
+                    }
+                }
+            });
+            pCall.cancelWith(request);
+        } catch (RuntimeException e) {
+            endpoint.finish(start, true);
+            pCall.fail(translate(e, connection, pUsername, pRequestParams));
+        }
+    }
+
+    /**
+     * A node is unreachable if the request failed below HTTP, i.E. a timeout or a refused connection, or if a proxy in
+     * front of the node reports it as down.
+     */
+    private static boolean isUnreachable(Throwable pError) {
+        Throwable e = pError;
+        if (e instanceof ProcessingException && e.getCause() instanceof WebApplicationException) {
+            e = e.getCause();
+        }
+        if (e instanceof WebApplicationException) {
+            final int status = ((WebApplicationException) e).getResponse().getStatus();
+            return status == 502 || status == 503 || status == 504;
+        }
+        return e instanceof ProcessingException && e.getCause() instanceof IOException;
+    }
+
+    /**
+     * Waits for a pending call. This is the only place where the blocking API waits. An interrupted caller stops waiting
+     * but does not cancel the call, because the future may be shared with other callers of a coalesced lookup; the
+     * call finishes on its own within the timeouts.
+     */
+    static <T> T await(ListenableFuture<T> pFuture) throws AuthenticationException {
+        try {
+            return pFuture.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new AuthenticationServiceException("general error: " + cause.getMessage(), cause);
+        } catch (CancellationException e) {
+            throw new AuthenticationServiceException("call to Jira was cancelled", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("interrupted while waiting for Jira", e);
+        }
+    }
+
+    /**
+     * Maps a failed call to the {@link AuthenticationException} the realm expects.
+     */
+    private static AuthenticationException translate(Throwable pError, JiraConnection pConnection, final String pUsername,
+            MultivaluedMap<String, String> pRequestParams) {
+        Throwable e = pError;
+        if (e instanceof ProcessingException && e.getCause() instanceof WebApplicationException) {
+            e = e.getCause();
+        }
+
+        if (e instanceof ProcessingException) {
+            if (e.getCause() instanceof ConnectTimeoutException) {
+                return new AuthenticationServiceException("Connect timeout reached while contacing Jira: " + pConnection.getConnectTimeout() + "ms", e);
+            } else if (e.getCause() instanceof SocketTimeoutException) {
+                return new AuthenticationServiceException("Timeout limit reached while contacing Jira: " + pConnection.getTimeout() + "ms", e);
             } else {
                 LOG.log(Level.WARNING, "the answer from jira is unexpected: " + e.getMessage(), e);
-                throw new AuthenticationServiceException("format error: " + e.getMessage(), e);
+                return new AuthenticationServiceException("format error: " + e.getMessage(), e);
             }
-        } catch (UniformInterfaceException e) {
-            if (e.getMessage().contains("403")) {
-                throw new BadCredentialsException("User does not exist (HTTP 403): " + pUsername, e);
-            } else if (e.getMessage().contains("401")) {
-                throw new BadCredentialsException("User is not allowed (HTTP 401): " + pUsername, e);
+        } else if (e instanceof WebApplicationException) {
+            final int status = ((WebApplicationException) e).getResponse().getStatus();
+            if (status == 403) {
+                return new BadCredentialsException("User does not exist (HTTP 403): " + pUsername, e);
+            } else if (status == 401) {
+                return new BadCredentialsException("User is not allowed (HTTP 401): " + pUsername, e);
+            } else if (status == 404) {
+                return new UsernameNotFoundException("Does not exist in Jira (HTTP 404): " + pRequestParams, e);
             } else {
                 LOG.log(Level.WARNING, "response error: " + e.getMessage(), e);
-                throw new AuthenticationServiceException("response error: " + e.getMessage(), e);
+                return new AuthenticationServiceException("response error: " + e.getMessage(), e);
             }
-        } catch (Exception e) {
-            throw new AuthenticationServiceException("general error: " + e.getMessage(), e);
+        } else if (e instanceof SocketTimeoutException) {
+            return new AuthenticationServiceException("Timeout limit reached while contacing Jira: " + pConnection.getTimeout() + "ms", e);
+        } else if (e instanceof IOException) {
+            LOG.log(Level.WARNING, "the answer from jira is unexpected: " + e.getMessage(), e);
+            return new AuthenticationServiceException("format error: " + e.getMessage(), e);
+        } else if (e instanceof AuthenticationException) {
+            return (AuthenticationException) e;
         }
+        return new AuthenticationServiceException("general error: " + e.getMessage(), e);
     }
 
-    ClientConfig initSSLConfig(boolean pAllowInsecureConnections) throws NoSuchAlgorithmException, KeyManagementException {
-        final ClientConfig config = new DefaultClientConfig();
-        if (pAllowInsecureConnections) {
-            LOG.log(Level.INFO, "connection to Jira services is using an insecure connection");
-            SSLContext ctx = SSLContext.getInstance("SSL");
-            ctx.init(null, new TrustManager[] {new X509TrustManager() {
-                public X509Certificate[] getAcceptedIssuers() {
-                    return null;
-                }
+    /**
+     * A call that has been admitted by the bulkhead and the circuit breaker. It is finished exactly once, either by the
+     * response or by a cancellation, which records the metrics and frees the admission.
+     */
+    private final class PendingCall<T> {
 
-                public void checkClientTrusted(X509Certificate[] certs, String authType) {
-                }
+        private final String mPath;
+        private final JiraTrace mTrace;
+        private final boolean mAdmitted;
+        private final long mStart = System.nanoTime();
+        private final SettableFuture<T> mResult = SettableFuture.create();
+        private final AtomicBoolean mFinished = new AtomicBoolean();
+
+        PendingCall(String pPath, JiraTrace pTrace, boolean pAdmitted) {
+            this.mPath = pPath;
+            this.mTrace = pTrace;
+            this.mAdmitted = pAdmitted;
+        }
+
+        void succeed(T pValue) {
+            if (finish(null)) {
+                mResult.set(pValue);
+            }
+        }
 
-                public void checkServerTrusted(X509Certificate[] certs, String authType) {
+        void fail(AuthenticationException pError) {
+            if (finish(pError)) {
+                mResult.setException(pError);
+            }
+        }
+
+        /** Cancels the HTTP request if the caller cancels the result. */
+        void cancelWith(final Future<?> pRequest) {
+            mResult.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    if (mResult.isCancelled()) {
+                        pRequest.cancel(true);
+                        finish(new AuthenticationServiceException("call to Jira was cancelled"));
+                    }
                 }
-            }}, null);
-            config.getProperties().put(HTTPSProperties.PROPERTY_HTTPS_PROPERTIES, new HTTPSProperties(HttpsURLConnection.getDefaultHostnameVerifier(), ctx));
-        } else {
-            LOG.log(Level.FINER, "connection to Jira services is secured");
+            }, MoreExecutors.sameThreadExecutor());
+        }
+
+        private boolean finish(AuthenticationException pError) {
+            if (!mFinished.compareAndSet(false, true)) {
+                return false;
+            }
+
+            final JiraMetrics metrics = JiraMetrics.get();
+            if (pError == null) {
+                metrics.record(JiraMetrics.HTTP, mStart, JiraMetrics.Outcome.SUCCESS);
+                metrics.record(JiraMetrics.HTTP + " " + mPath, mStart, JiraMetrics.Outcome.SUCCESS);
+            } else {
+                metrics.record(JiraMetrics.HTTP, mStart, pError);
+                metrics.record(JiraMetrics.HTTP + " " + mPath, mStart, pError);
+            }
+            if (mTrace != null) {
+                mTrace.setOutcome(pError == null ? JiraMetrics.Outcome.SUCCESS : JiraMetrics.outcomeOf(pError));
+            }
+
+            if (mCircuitBreaker != null) {
+                // Jira has answered if only the user was rejected or does not exist.
+                final boolean failure = pError != null && !(pError instanceof BadCredentialsException) && !(pError instanceof UsernameNotFoundException);
+                mCircuitBreaker.onResult(System.nanoTime() - mStart, failure);
+            }
+            if (mAdmitted) {
+                mBulkhead.release();
+            }
+            return true;
         }
-        return config;
+    }
+
+    /**
+     * Reads the <code>name</code> of the current JSON object and skips all other fields.
+     */
+    static String readName(JsonReader pReader) throws IOException {
+        String name = null;
+        pReader.beginObject();
+        while (pReader.hasNext()) {
+            if ("name".equals(pReader.nextName())) {
+                name = pReader.nextString();
+            } else {
+                pReader.skipValue();
+            }
+        }
+        pReader.endObject();
+        return name;
+    }
+
+    /**
+     * Consumes a JSON response of Jira while it is read from the connection.
+     *
+     * @param <T>
+     *            the result type.
+     */
+    public interface ResponseReader<T> {
+
+        T read(JsonReader pReader) throws IOException;
+    }
+
+    /**
+     * A {@link ResponseReader} for conditional requests. It knows the version the caller already has and supplies the
+     * result if Jira answers with 304 Not Modified.
+     *
+     * @param <T>
+     *            the result type.
+     */
+    public interface ConditionalReader<T> extends ResponseReader<T> {
+
+        /**
+         * @return the entity tag sent with <code>If-None-Match</code> or <code>null</code> for an unconditional request.
+         */
+        String getVersion();
+
+        /**
+         * @return the result if the version of the caller is still current.
+         */
+        T notModified();
+
+        /**
+         * @param pVersion
+         *            the entity tag of the response or <code>null</code>.
+         */
+        T read(JsonReader pReader, String pVersion) throws IOException;
+    }
+
+    /**
+     * Receives the members of a group while they are read from Jira.
+     */
+    public interface MemberVisitor {
+
+        void member(String pGroupname, String pUsername);
     }
 
 }
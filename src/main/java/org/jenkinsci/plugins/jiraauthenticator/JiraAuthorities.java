@@ -0,0 +1,81 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.acegisecurity.GrantedAuthority;
+import org.acegisecurity.GrantedAuthorityImpl;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import hudson.security.SecurityRealm;
+
+/**
+ * Canonical {@link GrantedAuthority} instances of the Jira groups and canonical {@link JiraAuthoritySet}s. The same few
+ * hundred group names repeat across all users and most users share the same handful of memberships, so every group and
+ * every distinct membership is represented by one shared instance.
+ * 
+ * @author stephan.watermeyer
+ *
+ */
+final class JiraAuthorities {
+
+    private static final ConcurrentMap<String, GrantedAuthority> AUTHORITIES = new ConcurrentHashMap<String, GrantedAuthority>();
+
+    /** Sets that are no longer used by any user are garbage collected. */
+    private static final Interner<JiraAuthoritySet> SETS = Interners.newWeakInterner();
+
+    /** The authorities of a user that has only been authenticated. */
+    static final JiraAuthoritySet AUTHENTICATED_ONLY = SETS.intern(JiraAuthoritySet.create(Collections.singletonList(SecurityRealm.AUTHENTICATED_AUTHORITY)));
+
+    private JiraAuthorities() {
+    }
+
+    /**
+     * @param pGroupname
+     *            name of a Jira group.
+     * @return the shared authority of the group.
+     */
+    static GrantedAuthority intern(String pGroupname) {
+        GrantedAuthority authority = AUTHORITIES.get(pGroupname);
+        if (authority == null) {
+            final GrantedAuthority created = new GrantedAuthorityImpl(pGroupname);
+            authority = AUTHORITIES.putIfAbsent(pGroupname, created);
+            if (authority == null) {
+                authority = created;
+            }
+        }
+        return authority;
+    }
+
+    /**
+     * @param pAuthorities
+     *            the authorities, may contain duplicates.
+     * @return the shared set with exactly these authorities.
+     */
+    static JiraAuthoritySet setOf(Collection<GrantedAuthority> pAuthorities) {
+        return SETS.intern(JiraAuthoritySet.create(pAuthorities));
+    }
+
+    /**
+     * @param pGroups
+     *            the authorities of the groups of an authenticated user.
+     * @return the shared set of the groups and {@link SecurityRealm#AUTHENTICATED_AUTHORITY}.
+     */
+    static JiraAuthoritySet forGroups(Collection<GrantedAuthority> pGroups) {
+        if (pGroups.isEmpty()) {
+            return AUTHENTICATED_ONLY;
+        }
+
+        final List<GrantedAuthority> authorities = new ArrayList<GrantedAuthority>(pGroups.size() + 1);
+        authorities.add(SecurityRealm.AUTHENTICATED_AUTHORITY);
+        authorities.addAll(pGroups);
+        return setOf(authorities);
+    }
+
+}
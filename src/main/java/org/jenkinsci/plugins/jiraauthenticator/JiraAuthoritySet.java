@@ -0,0 +1,99 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+import org.acegisecurity.GrantedAuthority;
+
+/**
+ * An immutable set of authorities. Sets are canonicalized through {@link JiraAuthorities#setOf(Collection)}, so users
+ * with the same group memberships share one instance and its precomputed array.
+ * 
+ * @author stephan.watermeyer
+ *
+ */
+public final class JiraAuthoritySet implements Serializable {
+
+    private static final long serialVersionUID = 2618946227618113421L;
+
+    private static final Comparator<GrantedAuthority> BY_NAME = new Comparator<GrantedAuthority>() {
+        @Override
+        public int compare(GrantedAuthority pFirst, GrantedAuthority pSecond) {
+            return pFirst.getAuthority().compareTo(pSecond.getAuthority());
+        }
+    };
+
+    private final GrantedAuthority[] authorities;
+    private final int hash;
+
+    /**
+     * @param pAuthorities
+     *            sorted authorities without duplicates.
+     */
+    private JiraAuthoritySet(GrantedAuthority[] pAuthorities) {
+        this.authorities = pAuthorities;
+        this.hash = Arrays.hashCode(pAuthorities);
+    }
+
+    /**
+     * Creates a set that is not canonicalized yet.
+     * 
+     * @param pAuthorities
+     *            the authorities, may contain duplicates.
+     * @return the new set.
+     */
+    static JiraAuthoritySet create(Collection<GrantedAuthority> pAuthorities) {
+        final GrantedAuthority[] sorted = pAuthorities.toArray(new GrantedAuthority[pAuthorities.size()]);
+        Arrays.sort(sorted, BY_NAME);
+
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (size == 0 || !sorted[size - 1].equals(sorted[i])) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return new JiraAuthoritySet(size == sorted.length ? sorted : Arrays.copyOf(sorted, size));
+    }
+
+    /**
+     * The shared array of the authorities. It must not be modified.
+     * 
+     * @return the authorities.
+     */
+    GrantedAuthority[] toArray() {
+        return authorities;
+    }
+
+    public int size() {
+        return authorities.length;
+    }
+
+    public boolean contains(GrantedAuthority pAuthority) {
+        return Arrays.binarySearch(authorities, pAuthority, BY_NAME) >= 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object pOther) {
+        if (this == pOther) {
+            return true;
+        }
+        if (!(pOther instanceof JiraAuthoritySet)) {
+            return false;
+        }
+        final JiraAuthoritySet other = (JiraAuthoritySet) pOther;
+        return hash == other.hash && Arrays.equals(authorities, other.authorities);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(authorities);
+    }
+
+}
@@ -0,0 +1,123 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.acegisecurity.AuthenticationServiceException;
+
+/**
+ * Limits the number of calls to Jira that are in flight at the same time. Callers beyond the limit wait in a bounded
+ * queue for at most the queue timeout. If the queue is full or the timeout is reached, the call is rejected right away
+ * instead of piling up request threads.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+class JiraBulkhead {
+
+    /** Default number of concurrent calls to Jira, the same as the pooled connections. */
+    static final int DEFAULT_MAX_CONCURRENT = JiraConnection.DEFAULT_MAX_CONNECTIONS;
+
+    /** Default number of calls that may wait for a free slot. */
+    static final int DEFAULT_QUEUE_SIZE = 100;
+
+    /** Default time in MS a call waits for a free slot. */
+    static final int DEFAULT_QUEUE_TIMEOUT = 5000;
+
+    private static final Logger LOG = Logger.getLogger(JiraBulkhead.class.getName());
+
+    private final int mMaxConcurrent;
+    private final int mQueueSize;
+    private final long mQueueTimeoutInMS;
+    private final Semaphore mPermits;
+    private final AtomicInteger mWaiting = new AtomicInteger();
+    private final AtomicLong mRejectedCalls = new AtomicLong();
+
+    /**
+     * Default constructor.
+     *
+     * @param pMaxConcurrent
+     *            maximum number of concurrent calls.
+     * @param pQueueSize
+     *            maximum number of waiting calls, 0 to reject as soon as all slots are taken.
+     * @param pQueueTimeout
+     *            MS a call waits for a free slot.
+     */
+    JiraBulkhead(int pMaxConcurrent, int pQueueSize, int pQueueTimeout) {
+        this.mMaxConcurrent = pMaxConcurrent;
+        this.mQueueSize = pQueueSize;
+        this.mQueueTimeoutInMS = pQueueTimeout;
+        this.mPermits = new Semaphore(pMaxConcurrent, true);
+    }
+
+    /**
+     * Takes a slot for one call. Every successful call must be followed by {@link #release()}.
+     *
+     * @throws AuthenticationServiceException
+     *             if the queue is full, the timeout is reached or the thread is interrupted.
+     */
+    void acquire() throws AuthenticationServiceException {
+        if (mPermits.tryAcquire()) {
+            return;
+        }
+
+        if (mWaiting.incrementAndGet() > mQueueSize) {
+            mWaiting.decrementAndGet();
+            reject("all " + mMaxConcurrent + " slots are in use and " + mQueueSize + " calls are waiting");
+        }
+
+        try {
+            if (!mPermits.tryAcquire(mQueueTimeoutInMS, TimeUnit.MILLISECONDS)) {
+                reject("no free slot within " + mQueueTimeoutInMS + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("interrupted while waiting for Jira", e);
+        } finally {
+            mWaiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Frees the slot of a finished call.
+     */
+    void release() {
+        mPermits.release();
+    }
+
+    int getMaxConcurrent() {
+        return mMaxConcurrent;
+    }
+
+    /**
+     * @return number of calls that are in flight.
+     */
+    int getActiveCalls() {
+        return mMaxConcurrent - mPermits.availablePermits();
+    }
+
+    /**
+     * @return number of calls that wait for a free slot.
+     */
+    int getWaitingCalls() {
+        return mWaiting.get();
+    }
+
+    /**
+     * @return number of calls that have been rejected since the bulkhead was created.
+     */
+    long getRejectedCalls() {
+        return mRejectedCalls.get();
+    }
+
+    private void reject(String pReason) {
+        mRejectedCalls.incrementAndGet();
+        LOG.log(Level.FINE, "rejecting call to Jira: {0}", pReason);
+        throw new AuthenticationServiceException("Too many concurrent calls to Jira, " + pReason);
+    }
+
+}
@@ -0,0 +1,194 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Circuit breaker around the calls to Jira. It records the outcome of the last calls and opens once too many of them
+ * failed or were slow. While it is open, calls fail fast instead of waiting for the timeout. After the open duration a
+ * few probe calls are let through; if they succeed the breaker closes again, otherwise it stays open.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+class JiraCircuitBreaker {
+
+    /** Default share of failed calls in percent that opens the breaker. */
+    static final int DEFAULT_FAILURE_RATE = 50;
+
+    /** Default duration in MS after which a call counts as slow. 0 disables the slow call detection. */
+    static final int DEFAULT_SLOW_CALL_THRESHOLD = 0;
+
+    /** Default share of slow calls in percent that opens the breaker. */
+    static final int DEFAULT_SLOW_CALL_RATE = 80;
+
+    /** Default time in seconds the breaker stays open before it probes Jira again. */
+    static final int DEFAULT_OPEN_DURATION = 30;
+
+    /** Number of the last calls the rates are calculated of. */
+    private static final int WINDOW_SIZE = 20;
+
+    /** The rates are only evaluated once this many calls have been recorded. */
+    private static final int MINIMUM_CALLS = 10;
+
+    /** Number of probe calls let through while half open. */
+    private static final int PROBE_CALLS = 3;
+
+    private static final Logger LOG = Logger.getLogger(JiraCircuitBreaker.class.getName());
+
+    /**
+     * The states of the breaker.
+     */
+    enum State {
+        /** Calls pass, outcomes are recorded. */
+        CLOSED,
+        /** Calls fail fast. */
+        OPEN,
+        /** A limited number of probe calls pass. */
+        HALF_OPEN
+    }
+
+    private final int mFailureRate;
+    private final long mSlowCallThresholdInNS;
+    private final int mSlowCallRate;
+    private final long mOpenDurationInMS;
+
+    private final boolean[] mFailures = new boolean[WINDOW_SIZE];
+    private final boolean[] mSlowCalls = new boolean[WINDOW_SIZE];
+    private int mRecorded;
+    private int mNext;
+    private int mFailureCount;
+    private int mSlowCallCount;
+
+    private State mState = State.CLOSED;
+    private long mOpenUntil;
+    private int mProbesStarted;
+    private int mProbesSucceeded;
+
+    private final AtomicLong mRejectedCalls = new AtomicLong();
+    private final AtomicLong mTransitions = new AtomicLong();
+
+    /**
+     * Default constructor.
+     *
+     * @param pFailureRate
+     *            share of failed calls in percent that opens the breaker, 0 to ignore failures.
+     * @param pSlowCallThreshold
+     *            duration in MS after which a call counts as slow, 0 to ignore slow calls.
+     * @param pSlowCallRate
+     *            share of slow calls in percent that opens the breaker.
+     * @param pOpenDuration
+     *            seconds the breaker stays open.
+     */
+    JiraCircuitBreaker(int pFailureRate, int pSlowCallThreshold, int pSlowCallRate, int pOpenDuration) {
+        this.mFailureRate = pFailureRate;
+        this.mSlowCallThresholdInNS = TimeUnit.MILLISECONDS.toNanos(pSlowCallThreshold);
+        this.mSlowCallRate = pSlowCallRate;
+        this.mOpenDurationInMS = TimeUnit.SECONDS.toMillis(pOpenDuration);
+    }
+
+    /**
+     * Asks for permission to call Jira. Every permitted call must be followed by {@link #onResult(long, boolean)}.
+     *
+     * @return FALSE if the call must fail fast.
+     */
+    synchronized boolean tryAcquire() {
+        if (mState == State.OPEN && System.currentTimeMillis() >= mOpenUntil) {
+            transitionTo(State.HALF_OPEN);
+        }
+
+        if (mState == State.CLOSED) {
+            return true;
+        } else if (mState == State.HALF_OPEN && mProbesStarted < PROBE_CALLS) {
+            mProbesStarted++;
+            return true;
+        }
+
+        mRejectedCalls.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Records the outcome of a permitted call.
+     *
+     * @param pDurationInNS
+     *            duration of the call.
+     * @param pFailure
+     *            TRUE if Jira could not answer, a rejected login is not a failure.
+     */
+    synchronized void onResult(long pDurationInNS, boolean pFailure) {
+        final boolean slow = mSlowCallThresholdInNS > 0 && pDurationInNS >= mSlowCallThresholdInNS;
+
+        if (mState == State.HALF_OPEN) {
+            if (pFailure || slow) {
+                transitionTo(State.OPEN);
+            } else if (++mProbesSucceeded >= PROBE_CALLS) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        } else if (mState == State.OPEN) {
+            // a call that was permitted before the breaker opened.
+            return;
+        }
+
+        if (mRecorded == WINDOW_SIZE) {
+            mFailureCount -= mFailures[mNext] ? 1 : 0;
+            mSlowCallCount -= mSlowCalls[mNext] ? 1 : 0;
+        } else {
+            mRecorded++;
+        }
+        mFailures[mNext] = pFailure;
+        mSlowCalls[mNext] = slow;
+        mFailureCount += pFailure ? 1 : 0;
+        mSlowCallCount += slow ? 1 : 0;
+        mNext = (mNext + 1) % WINDOW_SIZE;
+
+        if (mRecorded >= MINIMUM_CALLS) {
+            final boolean tooManyFailures = mFailureRate > 0 && mFailureCount * 100 >= mFailureRate * mRecorded;
+            final boolean tooManySlowCalls = mSlowCallThresholdInNS > 0 && mSlowCallCount * 100 >= mSlowCallRate * mRecorded;
+            if (tooManyFailures || tooManySlowCalls) {
+                transitionTo(State.OPEN);
+            }
+        }
+    }
+
+    synchronized State getState() {
+        return mState;
+    }
+
+    /**
+     * @return number of calls that failed fast since the breaker was created.
+     */
+    long getRejectedCalls() {
+        return mRejectedCalls.get();
+    }
+
+    /**
+     * @return number of state changes since the breaker was created.
+     */
+    long getTransitions() {
+        return mTransitions.get();
+    }
+
+    private void transitionTo(State pState) {
+        final String window = mFailureCount + " failed and " + mSlowCallCount + " slow of the last " + mRecorded + " calls";
+        LOG.log(pState == State.OPEN ? Level.WARNING : Level.INFO, "circuit breaker for Jira changes from {0} to {1}, {2}",
+                new Object[] {mState, pState, window});
+
+        mState = pState;
+        mTransitions.incrementAndGet();
+        mProbesStarted = 0;
+        mProbesSucceeded = 0;
+        if (pState == State.OPEN) {
+            mOpenUntil = System.currentTimeMillis() + mOpenDurationInMS;
+        } else if (pState == State.CLOSED) {
+            mRecorded = 0;
+            mNext = 0;
+            mFailureCount = 0;
+            mSlowCallCount = 0;
+        }
+    }
+
+}
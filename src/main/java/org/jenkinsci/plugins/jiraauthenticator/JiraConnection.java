@@ -0,0 +1,408 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLSocket;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.client.WebTarget;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientAsyncExecutor;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.JerseyClientBuilder;
+import org.glassfish.jersey.client.authentication.HttpAuthenticationFeature;
+import org.glassfish.jersey.client.filter.EncodingFilter;
+import org.glassfish.jersey.message.GZipEncoder;
+import org.glassfish.jersey.spi.ExecutorServiceProvider;
+
+import jenkins.util.Timer;
+
+/**
+ * A long-lived connection to one Jira instance. It wraps a Jersey client that is backed by a pooled Apache HttpClient,
+ * so TCP connections and TLS sessions are kept alive and reused across all calls instead of being set up for every
+ * request. The TLS setup is a {@link JiraTlsContext} that is shared by the connections to all nodes. Asynchronous
+ * calls are executed on an I/O pool with one thread per pooled connection, or on a virtual thread per call if enabled,
+ * see {@link JiraThreads}. Responses are requested gzip compressed and decompressed while they are read. The pool and
+ * the socket factory mark the phases of a sampled call in its {@link JiraTrace}.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+public class JiraConnection implements Closeable {
+
+    /** Default number of pooled connections to Jira. */
+    public static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+    /** Default time in MS to wait for a connection to Jira, also used to wait for a pooled connection. */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+
+    /** Default time in seconds after which an idle pooled connection is closed. */
+    public static final int DEFAULT_IDLE_TIMEOUT = 60;
+
+    /** Connections that have been idle for longer than this are validated before they are leased again. */
+    private static final int VALIDATE_AFTER_INACTIVITY_MS = 2000;
+
+    private static final Logger LOG = Logger.getLogger(JiraConnection.class.getName());
+
+    private final String mUrl;
+    private final Integer mTimeoutInMS;
+    private final int mConnectTimeoutInMS;
+    private final JiraTlsContext mTls;
+    private final int mMaxConnections;
+    private final int mIdleTimeout;
+    private final boolean mVirtualThreads;
+
+    private final PoolingHttpClientConnectionManager mConnectionManager;
+    private final Client mClient;
+    private final WebTarget mTarget;
+    private final Future<?> mIdleEviction;
+    private final ExecutorService mAsyncExecutor;
+
+    /**
+     * Default constructor.
+     *
+     * @param pURL
+     *            the URL of Jira.
+     * @param pTimeoutInMS
+     *            read timeout in MS
+     * @param pConnectTimeoutInMS
+     *            connect timeout in MS, <code>null</code> for the default.
+     * @param pInsecureConnections
+     *            TRUE to allow insecure TLS connections.
+     * @param pMaxConnections
+     *            maximum number of pooled connections, <code>null</code> for the default.
+     * @param pIdleTimeout
+     *            seconds after which idle connections are evicted, <code>null</code> for the default.
+     * @throws GeneralSecurityException
+     *             if the TLS setup fails.
+     */
+    public JiraConnection(String pURL, Integer pTimeoutInMS, Integer pConnectTimeoutInMS, boolean pInsecureConnections, Integer pMaxConnections,
+            Integer pIdleTimeout) throws GeneralSecurityException {
+        this(pURL, pTimeoutInMS, pConnectTimeoutInMS, pInsecureConnections, pMaxConnections, pIdleTimeout, false);
+    }
+
+    /**
+     * Constructor that can run the asynchronous calls on virtual threads.
+     *
+     * @param pURL
+     *            the URL of Jira.
+     * @param pTimeoutInMS
+     *            read timeout in MS
+     * @param pConnectTimeoutInMS
+     *            connect timeout in MS, <code>null</code> for the default.
+     * @param pInsecureConnections
+     *            TRUE to allow insecure TLS connections.
+     * @param pMaxConnections
+     *            maximum number of pooled connections, <code>null</code> for the default.
+     * @param pIdleTimeout
+     *            seconds after which idle connections are evicted, <code>null</code> for the default.
+     * @param pVirtualThreads
+     *            TRUE to run every asynchronous call on its own virtual thread if the JVM supports it.
+     * @throws GeneralSecurityException
+     *             if the TLS setup fails.
+     */
+    public JiraConnection(String pURL, Integer pTimeoutInMS, Integer pConnectTimeoutInMS, boolean pInsecureConnections, Integer pMaxConnections,
+            Integer pIdleTimeout, boolean pVirtualThreads) throws GeneralSecurityException {
+        this(pURL, pTimeoutInMS, pConnectTimeoutInMS, new JiraTlsContext(pInsecureConnections, null, null, null), pMaxConnections, pIdleTimeout,
+                pVirtualThreads);
+    }
+
+    /**
+     * Constructor with a shared TLS setup.
+     *
+     * @param pURL
+     *            the URL of Jira.
+     * @param pTimeoutInMS
+     *            read timeout in MS
+     * @param pConnectTimeoutInMS
+     *            connect timeout in MS, <code>null</code> for the default.
+     * @param pTls
+     *            the TLS setup, shared with the connections to the other nodes.
+     * @param pMaxConnections
+     *            maximum number of pooled connections, <code>null</code> for the default.
+     * @param pIdleTimeout
+     *            seconds after which idle connections are evicted, <code>null</code> for the default.
+     * @param pVirtualThreads
+     *            TRUE to run every asynchronous call on its own virtual thread if the JVM supports it.
+     */
+    public JiraConnection(String pURL, Integer pTimeoutInMS, Integer pConnectTimeoutInMS, JiraTlsContext pTls, Integer pMaxConnections,
+            Integer pIdleTimeout, boolean pVirtualThreads) {
+        this.mUrl = pURL;
+        this.mTimeoutInMS = pTimeoutInMS;
+        this.mConnectTimeoutInMS = positiveOrDefault(pConnectTimeoutInMS, DEFAULT_CONNECT_TIMEOUT);
+        this.mTls = pTls;
+        this.mMaxConnections = positiveOrDefault(pMaxConnections, DEFAULT_MAX_CONNECTIONS);
+        this.mIdleTimeout = positiveOrDefault(pIdleTimeout, DEFAULT_IDLE_TIMEOUT);
+        this.mVirtualThreads = pVirtualThreads;
+
+        final Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory> create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new TracingSSLSocketFactory(pTls))
+                .build();
+
+        // all requests go to the same host, so the route limit is the pool limit.
+        mConnectionManager = new TracingConnectionManager(registry);
+        mConnectionManager.setMaxTotal(mMaxConnections);
+        mConnectionManager.setDefaultMaxPerRoute(mMaxConnections);
+        mConnectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
+
+        final ClientConfig config = new ClientConfig();
+        config.connectorProvider(new ApacheConnectorProvider());
+        config.property(ApacheClientProperties.CONNECTION_MANAGER, mConnectionManager);
+        config.property(ClientProperties.CONNECT_TIMEOUT, mConnectTimeoutInMS);
+        // the async calls run on a small I/O pool, one thread per pooled connection is enough.
+        config.property(ClientProperties.ASYNC_THREADPOOL_SIZE, mMaxConnections);
+        mAsyncExecutor = JiraThreads.newExecutor("Jira I/O " + pURL, mMaxConnections, pVirtualThreads);
+        config.register(new AsyncExecutorProvider(mAsyncExecutor));
+        if (pTimeoutInMS != null) {
+            config.property(ClientProperties.READ_TIMEOUT, pTimeoutInMS);
+        }
+        // without this a request waits forever for a free connection once the pool is exhausted.
+        config.property(ApacheClientProperties.REQUEST_CONFIG, RequestConfig.custom().setConnectionRequestTimeout(mConnectTimeoutInMS).build());
+
+        // Jersey looks up its implementation through the context class loader, which is not the plugin class loader.
+        final Thread current = Thread.currentThread();
+        final ClassLoader original = current.getContextClassLoader();
+        current.setContextClassLoader(JiraConnection.class.getClassLoader());
+        try {
+            mClient = new JerseyClientBuilder().withConfig(config).build();
+            mClient.register(HttpAuthenticationFeature.basicBuilder().build());
+            mClient.register(new TraceFilter());
+            // sends Accept-Encoding: gzip. The Apache connector may already decompress the stream, else Jersey does.
+            mClient.register(EncodingFilter.class);
+            mClient.register(GZipEncoder.class);
+            mTarget = mClient.target(pURL).path("rest/api/2/");
+        } finally {
+            current.setContextClassLoader(original);
+        }
+
+        mIdleEviction = Timer.get().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                mConnectionManager.closeExpiredConnections();
+                mConnectionManager.closeIdleConnections(mIdleTimeout, TimeUnit.SECONDS);
+            }
+        }, mIdleTimeout, mIdleTimeout, TimeUnit.SECONDS);
+
+        LOG.log(Level.FINE, "created connection pool to {0} with {1} connections, virtual threads: {2}",
+                new Object[] {pURL, mMaxConnections, pVirtualThreads && JiraThreads.isVirtualSupported()});
+    }
+
+    /**
+     * The base target of the Jira REST API, i.E. <code>https://jira/rest/api/2/</code>. The basic authentication of a
+     * request is set through the {@link HttpAuthenticationFeature} request properties.
+     *
+     * @return the thread-safe base target.
+     */
+    public WebTarget getTarget() {
+        return mTarget;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public Integer getTimeout() {
+        return mTimeoutInMS;
+    }
+
+    public int getConnectTimeout() {
+        return mConnectTimeoutInMS;
+    }
+
+    /**
+     * Checks whether this connection was built with the given settings and can be reused for them.
+     *
+     * @param pURL
+     *            the URL of Jira.
+     * @param pTimeoutInMS
+     *            read timeout in MS
+     * @param pConnectTimeoutInMS
+     *            connect timeout in MS
+     * @param pInsecureConnections
+     *            TRUE to allow insecure TLS connections.
+     * @param pMaxConnections
+     *            maximum number of pooled connections.
+     * @param pIdleTimeout
+     *            seconds after which idle connections are evicted.
+     * @return TRUE if nothing has changed.
+     */
+    public boolean matches(String pURL, Integer pTimeoutInMS, Integer pConnectTimeoutInMS, boolean pInsecureConnections, Integer pMaxConnections,
+            Integer pIdleTimeout) {
+        return matches(pURL, pTimeoutInMS, pConnectTimeoutInMS, pInsecureConnections, pMaxConnections, pIdleTimeout, false);
+    }
+
+    /**
+     * Checks whether this connection was built with the given settings, including the thread mode.
+     *
+     * @return TRUE if nothing has changed.
+     */
+    public boolean matches(String pURL, Integer pTimeoutInMS, Integer pConnectTimeoutInMS, boolean pInsecureConnections, Integer pMaxConnections,
+            Integer pIdleTimeout, boolean pVirtualThreads) {
+        return mTls.matches(pInsecureConnections, null, null, null)
+                && matches(pURL, pTimeoutInMS, pConnectTimeoutInMS, mTls, pMaxConnections, pIdleTimeout, pVirtualThreads);
+    }
+
+    /**
+     * Checks whether this connection was built with the given settings and the given TLS setup.
+     *
+     * @return TRUE if nothing has changed.
+     */
+    public boolean matches(String pURL, Integer pTimeoutInMS, Integer pConnectTimeoutInMS, JiraTlsContext pTls, Integer pMaxConnections,
+            Integer pIdleTimeout, boolean pVirtualThreads) {
+        return mTls == pTls && mVirtualThreads == pVirtualThreads && ObjectUtils.equals(mUrl, pURL) && ObjectUtils.equals(mTimeoutInMS, pTimeoutInMS)
+                && mConnectTimeoutInMS == positiveOrDefault(pConnectTimeoutInMS, DEFAULT_CONNECT_TIMEOUT)
+                && mMaxConnections == positiveOrDefault(pMaxConnections, DEFAULT_MAX_CONNECTIONS)
+                && mIdleTimeout == positiveOrDefault(pIdleTimeout, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    @Override
+    public void close() {
+        LOG.log(Level.FINE, "closing connection pool to {0}", mUrl);
+        mIdleEviction.cancel(false);
+        mClient.close();
+        mConnectionManager.shutdown();
+        mAsyncExecutor.shutdown();
+    }
+
+    /**
+     * Hands the I/O executor to Jersey for the asynchronous calls.
+     */
+    @ClientAsyncExecutor
+    static final class AsyncExecutorProvider implements ExecutorServiceProvider {
+
+        private final ExecutorService mExecutor;
+
+        AsyncExecutorProvider(ExecutorService pExecutor) {
+            this.mExecutor = pExecutor;
+        }
+
+        @Override
+        public ExecutorService getExecutorService() {
+            return mExecutor;
+        }
+
+        @Override
+        public void dispose(ExecutorService pExecutor) {
+            pExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Hands the trace of a sampled call to the I/O thread and ends the wait once the response headers have arrived.
+     */
+    static final class TraceFilter implements ClientRequestFilter, ClientResponseFilter {
+
+        @Override
+        public void filter(ClientRequestContext pRequest) {
+            JiraTrace.attach((JiraTrace) pRequest.getProperty(JiraTrace.PROPERTY));
+        }
+
+        @Override
+        public void filter(ClientRequestContext pRequest, ClientResponseContext pResponse) {
+            JiraTrace.markCurrent(JiraTrace.Phase.WAIT);
+        }
+    }
+
+    /**
+     * Marks the lease of a pooled connection and the set-up of a new one. Calls that are not sampled are passed through
+     * without any allocation.
+     */
+    static final class TracingConnectionManager extends PoolingHttpClientConnectionManager {
+
+        TracingConnectionManager(Registry<ConnectionSocketFactory> pRegistry) {
+            super(pRegistry);
+        }
+
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute pRoute, Object pState) {
+            final ConnectionRequest request = super.requestConnection(pRoute, pState);
+            if (JiraTrace.current() == null) {
+                return request;
+            }
+            return new ConnectionRequest() {
+                @Override
+                public HttpClientConnection get(long pTimeout, TimeUnit pUnit) throws InterruptedException, ExecutionException,
+                        ConnectionPoolTimeoutException {
+                    final HttpClientConnection connection = request.get(pTimeout, pUnit);
+                    JiraTrace.markCurrent(JiraTrace.Phase.QUEUE);
+                    return connection;
+                }
+
+                @Override
+                public boolean cancel() {
+                    return request.cancel();
+                }
+            };
+        }
+
+        @Override
+        public void connect(HttpClientConnection pConnection, HttpRoute pRoute, int pConnectTimeout, HttpContext pContext) throws IOException {
+            super.connect(pConnection, pRoute, pConnectTimeout, pContext);
+            // the TCP connect of a secure route has already been marked by the socket factory.
+            JiraTrace.markCurrent(pRoute.isSecure() ? JiraTrace.Phase.TLS_HANDSHAKE : JiraTrace.Phase.CONNECT);
+        }
+    }
+
+    /**
+     * Marks the end of the TCP connect, the TLS handshake starts right after the socket has been prepared. Every
+     * handshake is counted by the {@link JiraTlsContext}.
+     */
+    static final class TracingSSLSocketFactory extends SSLConnectionSocketFactory {
+
+        private final JiraTlsContext mTls;
+
+        TracingSSLSocketFactory(JiraTlsContext pTls) {
+            super(pTls.getContext(), SSLConnectionSocketFactory.getDefaultHostnameVerifier());
+            this.mTls = pTls;
+        }
+
+        @Override
+        protected void prepareSocket(SSLSocket pSocket) throws IOException {
+            JiraTrace.markCurrent(JiraTrace.Phase.CONNECT);
+        }
+
+        @Override
+        public Socket createLayeredSocket(Socket pSocket, String pTarget, int pPort, HttpContext pContext) throws IOException {
+            final long start = System.currentTimeMillis();
+            final Socket socket = super.createLayeredSocket(pSocket, pTarget, pPort, pContext);
+            if (socket instanceof SSLSocket) {
+                mTls.onHandshake(((SSLSocket) socket).getSession(), start);
+            }
+            return socket;
+        }
+    }
+
+    static int positiveOrDefault(Integer pValue, int pDefault) {
+        return (pValue == null || pValue <= 0) ? pDefault : pValue;
+    }
+
+}
@@ -0,0 +1,192 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Remembers successful password verifications against Jira for a short time, so that repeated logins of the same user,
+ * i.E. HTTP Basic calls of scripts, are answered without asking Jira. Only a salted PBKDF2 digest of the password is
+ * kept, never the password itself.
+ * <p>
+ * The verifications are remembered by the {@link JiraUserCache#key(String)} of the username, so an invalidation of the
+ * name Jira reports drops the verification of every spelling the user has logged in with.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+class JiraCredentialCache {
+
+    /** Default time in seconds a verification is remembered. 0 disables the cache. */
+    static final int DEFAULT_TTL = 0;
+
+    /**
+     * PBKDF2 iterations. Kept low on purpose: the digest only lives in memory for the TTL and a lookup must stay well
+     * below the cost of a call to Jira.
+     */
+    private static final int ITERATIONS = 1000;
+    private static final int KEY_LENGTH = 256;
+    private static final int SALT_LENGTH = 16;
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA1";
+
+    private static final Logger LOG = Logger.getLogger(JiraCredentialCache.class.getName());
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final long mTtlInMS;
+    private final Map<String, Entry> mEntries;
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mEvictions = new AtomicLong();
+
+    /**
+     * Default constructor.
+     *
+     * @param pTtl
+     *            seconds a verification is remembered.
+     * @param pMaxEntries
+     *            maximum number of remembered users.
+     */
+    JiraCredentialCache(int pTtl, final int pMaxEntries) {
+        this.mTtlInMS = TimeUnit.SECONDS.toMillis(pTtl);
+        this.mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> pEldest) {
+                if (size() > pMaxEntries) {
+                    mEvictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Checks the password against a remembered verification.
+     *
+     * @param pUsername
+     *            the username as given by the user.
+     * @param pPassword
+     *            the password in clear text.
+     * @return the username as returned by Jira or <code>null</code> if Jira has to be asked.
+     */
+    String verify(String pUsername, String pPassword) {
+        final Entry entry;
+        synchronized (mEntries) {
+            entry = mEntries.get(JiraUserCache.key(pUsername));
+        }
+        if (entry == null || System.currentTimeMillis() >= entry.mExpiresAt) {
+            mMisses.incrementAndGet();
+            return null;
+        }
+
+        final byte[] digest = hash(pPassword, entry.mSalt);
+        if (digest != null && MessageDigest.isEqual(digest, entry.mDigest)) {
+            mHits.incrementAndGet();
+            return entry.mName;
+        }
+        mMisses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Remembers a successful verification.
+     *
+     * @param pUsername
+     *            the username as given by the user.
+     * @param pPassword
+     *            the password in clear text.
+     * @param pName
+     *            the username as returned by Jira.
+     */
+    void store(String pUsername, String pPassword, String pName) {
+        final byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        final byte[] digest = hash(pPassword, salt);
+        if (digest == null) {
+            return;
+        }
+
+        final Entry entry = new Entry(pName, salt, digest, System.currentTimeMillis() + mTtlInMS);
+        synchronized (mEntries) {
+            mEntries.put(JiraUserCache.key(pUsername), entry);
+        }
+    }
+
+    /**
+     * Forgets the verification of a user, i.E. after Jira has rejected the user.
+     *
+     * @param pUsername
+     *            the username as given by the user.
+     */
+    void invalidate(String pUsername) {
+        synchronized (mEntries) {
+            mEntries.remove(JiraUserCache.key(pUsername));
+        }
+    }
+
+    int size() {
+        synchronized (mEntries) {
+            return mEntries.size();
+        }
+    }
+
+    long getHits() {
+        return mHits.get();
+    }
+
+    long getMisses() {
+        return mMisses.get();
+    }
+
+    /**
+     * @return number of verifications dropped because the cache was full.
+     */
+    long getEvictions() {
+        return mEvictions.get();
+    }
+
+    /**
+     * @return the PBKDF2 digest of the password or <code>null</code> if it can not be computed.
+     */
+    static byte[] hash(String pPassword, byte[] pSalt) {
+        final PBEKeySpec spec = new PBEKeySpec(pPassword.toCharArray(), pSalt, ITERATIONS, KEY_LENGTH);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            LOG.log(Level.WARNING, "unable to hash password, verification is not cached", e);
+            return null;
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * A remembered verification.
+     */
+    private static final class Entry {
+
+        private final String mName;
+        private final byte[] mSalt;
+        private final byte[] mDigest;
+        private final long mExpiresAt;
+
+        Entry(String pName, byte[] pSalt, byte[] pDigest, long pExpiresAt) {
+            this.mName = pName;
+            this.mSalt = pSalt;
+            this.mDigest = pDigest;
+            this.mExpiresAt = pExpiresAt;
+        }
+    }
+
+}
@@ -0,0 +1,40 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.util.logging.Logger;
+
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import hudson.security.SecurityRealm;
+import jenkins.model.Jenkins;
+
+/**
+ * Drops the resolved technical user of the active {@link JiraSecurityRealm} whenever the global credentials are saved,
+ * so that changed or removed credentials are picked up on the next call.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+@Extension
+public class JiraCredentialsListener extends SaveableListener {
+
+    private static final Logger LOG = Logger.getLogger(JiraCredentialsListener.class.getName());
+
+    @Override
+    public void onChange(Saveable pSaveable, XmlFile pFile) {
+        if (!(pSaveable instanceof SystemCredentialsProvider)) {
+            return;
+        }
+
+        final Jenkins jenkins = Jenkins.getInstance();
+        final SecurityRealm realm = jenkins != null ? jenkins.getSecurityRealm() : null;
+        if (realm instanceof JiraSecurityRealm) {
+            LOG.fine("credentials have changed, resolving the technical user again");
+            ((JiraSecurityRealm) realm).invalidateService();
+        }
+    }
+
+}
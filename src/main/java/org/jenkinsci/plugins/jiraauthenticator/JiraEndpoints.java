@@ -0,0 +1,234 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The Jira nodes the calls are spread across, i.E. the nodes of a Jira Data Center. Every endpoint has its own
+ * {@link JiraConnection} and with it its own connection pool.
+ * <p>
+ * A call goes to the healthy endpoint with the lowest score, which is the number of outstanding requests weighted with
+ * the average response time of the endpoint. The health is tracked passively: an endpoint that did not answer is
+ * skipped for a back-off that doubles with every further failure, the first answer makes it healthy again.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+class JiraEndpoints implements Closeable {
+
+    /** Weight of the latest response time in the moving average. */
+    private static final double LATENCY_WEIGHT = 0.2;
+
+    /** Response time assumed for an endpoint that has not answered yet. */
+    private static final long INITIAL_LATENCY_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /** Back-off after the first failure, doubled with every further failure. */
+    private static final long BACKOFF_MS = 5000;
+    private static final long MAX_BACKOFF_MS = 60000;
+
+    private static final Logger LOG = Logger.getLogger(JiraEndpoints.class.getName());
+
+    private final List<Endpoint> mEndpoints;
+
+    /**
+     * Default constructor.
+     *
+     * @param pConnections
+     *            one connection per node.
+     */
+    JiraEndpoints(List<JiraConnection> pConnections) {
+        final List<Endpoint> endpoints = new ArrayList<Endpoint>();
+        for (JiraConnection current : pConnections) {
+            endpoints.add(new Endpoint(current));
+        }
+        this.mEndpoints = Collections.unmodifiableList(endpoints);
+    }
+
+    /**
+     * Opens one connection per URL.
+     *
+     * @param pURLs
+     *            the URLs of the nodes, separated by whitespace or commas.
+     * @param pTimeoutInMS
+     *            read timeout in MS
+     * @param pConnectTimeoutInMS
+     *            connect timeout in MS, <code>null</code> for the default.
+     * @param pTls
+     *            the TLS setup that is shared by all nodes.
+     * @param pMaxConnections
+     *            maximum number of pooled connections per node, <code>null</code> for the default.
+     * @param pIdleTimeout
+     *            seconds after which idle connections are evicted, <code>null</code> for the default.
+     * @param pVirtualThreads
+     *            TRUE to run the asynchronous calls on virtual threads if the JVM supports them.
+     * @return the endpoints.
+     */
+    static JiraEndpoints open(String pURLs, Integer pTimeoutInMS, Integer pConnectTimeoutInMS, JiraTlsContext pTls, Integer pMaxConnections,
+            Integer pIdleTimeout, boolean pVirtualThreads) {
+        final List<JiraConnection> connections = new ArrayList<JiraConnection>();
+        for (String current : parseUrls(pURLs)) {
+            connections.add(new JiraConnection(current, pTimeoutInMS, pConnectTimeoutInMS, pTls, pMaxConnections, pIdleTimeout, pVirtualThreads));
+        }
+        return new JiraEndpoints(connections);
+    }
+
+    /**
+     * Splits the configured URLs.
+     *
+     * @param pURLs
+     *            the URLs, separated by whitespace or commas.
+     * @return the URLs, at least one entry.
+     */
+    static List<String> parseUrls(String pURLs) {
+        final List<String> urls = new ArrayList<String>();
+        for (String current : StringUtils.split(StringUtils.defaultString(pURLs), " ,\t\r\n")) {
+            urls.add(current);
+        }
+        if (urls.isEmpty()) {
+            // keeps the behaviour of a single, missing URL.
+            urls.add(pURLs);
+        }
+        return urls;
+    }
+
+    /**
+     * Selects the endpoint for the next request.
+     *
+     * @param pTried
+     *            endpoints that have already failed for this call.
+     * @return the endpoint or <code>null</code> if all endpoints have been tried.
+     */
+    Endpoint select(List<Endpoint> pTried) {
+        final long now = System.currentTimeMillis();
+        Endpoint best = null;
+        Endpoint recovering = null;
+        for (Endpoint current : mEndpoints) {
+            if (pTried.contains(current)) {
+                continue;
+            }
+            if (current.isHealthy(now)) {
+                if (best == null || current.score() < best.score()) {
+                    best = current;
+                }
+            } else if (recovering == null || current.mUnhealthyUntil < recovering.mUnhealthyUntil) {
+                recovering = current;
+            }
+        }
+        // if no endpoint is healthy, the one that recovers first is probed.
+        return best != null ? best : recovering;
+    }
+
+    List<Endpoint> getEndpoints() {
+        return mEndpoints;
+    }
+
+    int size() {
+        return mEndpoints.size();
+    }
+
+    /**
+     * Checks whether these endpoints were built with the given settings and can be reused for them.
+     *
+     * @return TRUE if nothing has changed.
+     */
+    boolean matches(String pURLs, Integer pTimeoutInMS, Integer pConnectTimeoutInMS, JiraTlsContext pTls, Integer pMaxConnections,
+            Integer pIdleTimeout, boolean pVirtualThreads) {
+        final List<String> urls = parseUrls(pURLs);
+        if (urls.size() != mEndpoints.size()) {
+            return false;
+        }
+        for (int i = 0; i < urls.size(); i++) {
+            if (!mEndpoints.get(i).mConnection.matches(urls.get(i), pTimeoutInMS, pConnectTimeoutInMS, pTls, pMaxConnections, pIdleTimeout,
+                    pVirtualThreads)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        for (Endpoint current : mEndpoints) {
+            current.mConnection.close();
+        }
+    }
+
+    /**
+     * One Jira node and its passively tracked health.
+     */
+    static final class Endpoint {
+
+        private final JiraConnection mConnection;
+        private final AtomicInteger mOutstanding = new AtomicInteger();
+        private volatile long mLatencyInNS = INITIAL_LATENCY_NS;
+        private volatile int mFailures;
+        private volatile long mUnhealthyUntil;
+
+        Endpoint(JiraConnection pConnection) {
+            this.mConnection = pConnection;
+        }
+
+        JiraConnection getConnection() {
+            return mConnection;
+        }
+
+        /**
+         * Marks the start of a request.
+         */
+        void start() {
+            mOutstanding.incrementAndGet();
+        }
+
+        /**
+         * Marks the end of a request.
+         *
+         * @param pStartInNS
+         *            {@link System#nanoTime()} at the start of the request.
+         * @param pAnswered
+         *            FALSE if the node did not answer, i.E. a timeout or a refused connection.
+         */
+        void finish(long pStartInNS, boolean pAnswered) {
+            mOutstanding.decrementAndGet();
+            synchronized (this) {
+                if (pAnswered) {
+                    mLatencyInNS = (long) (mLatencyInNS * (1 - LATENCY_WEIGHT) + (System.nanoTime() - pStartInNS) * LATENCY_WEIGHT);
+                    if (mFailures > 0) {
+                        LOG.log(Level.INFO, "Jira node {0} is answering again", mConnection.getUrl());
+                    }
+                    mFailures = 0;
+                    mUnhealthyUntil = 0;
+                } else {
+                    final long backoff = Math.min(BACKOFF_MS << Math.min(mFailures, 10), MAX_BACKOFF_MS);
+                    mFailures++;
+                    mUnhealthyUntil = System.currentTimeMillis() + backoff;
+                    LOG.log(Level.WARNING, "Jira node {0} did not answer, skipping it for {1}ms", new Object[] {mConnection.getUrl(), backoff});
+                }
+            }
+        }
+
+        boolean isHealthy(long pNow) {
+            return pNow >= mUnhealthyUntil;
+        }
+
+        int getOutstanding() {
+            return mOutstanding.get();
+        }
+
+        double getLatencyMillis() {
+            return mLatencyInNS / 1000000.0;
+        }
+
+        private double score() {
+            return (mOutstanding.get() + 1) * (double) mLatencyInNS;
+        }
+    }
+
+}
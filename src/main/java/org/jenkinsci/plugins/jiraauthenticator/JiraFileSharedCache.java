@@ -0,0 +1,385 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.util.FormValidation;
+
+/**
+ * A {@link JiraSharedCache} in a directory that all controllers can write, i.E. on a NFS share, or on a local disk to
+ * try it with several controllers on one machine.
+ * <p>
+ * Every user is a small binary file named by the digest of its username, it is written to a temporary file and moved
+ * into place, so a reader never sees a partial entry. Writers compare the versions and replace the file while they
+ * hold a lock on the <code>.lock</code> file of the directory, which is also held within this JVM. Invalidations are
+ * appended to <code>invalidations.log</code>, which every controller polls from the offset it has read so far. Once the
+ * log is too large it is rewritten with the recent invalidations and a new generation, a controller that sees a new
+ * generation reads it from the start.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+@Extension
+public class JiraFileSharedCache extends JiraSharedCache {
+
+    static final String USERS = "users";
+    static final String LOG_FILE = "invalidations.log";
+    static final String LOCK_FILE = ".lock";
+
+    private static final int MAGIC = 0x4A415543;
+    private static final int VERSION = 1;
+
+    private static final byte FOUND = 0;
+    private static final byte NOT_FOUND = 1;
+    private static final byte INVALIDATED = 2;
+
+    /** Bytes of the header of the invalidation log: magic and generation. */
+    private static final int LOG_HEADER = 12;
+
+    /** Size in bytes above which the invalidation log is rewritten. */
+    private static final long MAX_LOG_SIZE = 256 * 1024;
+
+    /** Invalidations younger than this are kept when the log is rewritten. */
+    private static final long LOG_RETENTION = TimeUnit.MINUTES.toMillis(10);
+
+    /** Entries are deleted this long after they have expired, no load runs for longer. */
+    private static final long PURGE_AGE = TimeUnit.DAYS.toMillis(1);
+
+    /** Time between two purges of the expired entries. */
+    private static final long PURGE_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    private static final Logger LOG = Logger.getLogger(JiraFileSharedCache.class.getName());
+
+    @Override
+    public String getDisplayName() {
+        return "Shared directory";
+    }
+
+    @Override
+    public FormValidation checkLocation(String pLocation) {
+        if (StringUtils.isBlank(pLocation)) {
+            return FormValidation.error("A directory that all controllers can write is required");
+        }
+        final File directory = new File(pLocation.trim());
+        if (!directory.exists()) {
+            return FormValidation.warning("Directory does not exist, it is created on first use");
+        } else if (!directory.isDirectory()) {
+            return FormValidation.error("Not a directory");
+        } else if (!directory.canWrite()) {
+            return FormValidation.error("Directory is not writable");
+        }
+        return FormValidation.ok();
+    }
+
+    @Override
+    public Store open(String pLocation) throws IOException {
+        if (StringUtils.isBlank(pLocation)) {
+            throw new IOException("no directory configured for the shared cache");
+        }
+        return new FileStore(new File(pLocation.trim()));
+    }
+
+    /**
+     * The entries in one directory.
+     */
+    static final class FileStore implements Store {
+
+        private final File mUsers;
+        private final File mLog;
+        private final File mLock;
+
+        private long mGeneration = -1;
+        private long mOffset;
+        private long mLastVersion;
+        private long mLastPurge = System.currentTimeMillis();
+
+        FileStore(File pDirectory) throws IOException {
+            this.mUsers = new File(pDirectory, USERS);
+            this.mLog = new File(pDirectory, LOG_FILE);
+            this.mLock = new File(pDirectory, LOCK_FILE);
+            if (!mUsers.isDirectory() && !mUsers.mkdirs()) {
+                throw new IOException("unable to create the shared cache directory " + mUsers);
+            }
+        }
+
+        @Override
+        public Entry get(String pUsername) throws IOException {
+            return read(fileOf(pUsername), pUsername);
+        }
+
+        @Override
+        public synchronized boolean put(String pUsername, Entry pEntry) throws IOException {
+            final FileChannel lock = lock();
+            try {
+                final File file = fileOf(pUsername);
+                final Entry current = read(file, pUsername);
+                if (current != null && current.getVersion() >= pEntry.getVersion()) {
+                    return false;
+                }
+                write(file, pUsername, pEntry);
+                return true;
+            } finally {
+                lock.close();
+            }
+        }
+
+        @Override
+        public synchronized void invalidate(String pUsername, long pVersion) throws IOException {
+            final FileChannel lock = lock();
+            try {
+                final File file = fileOf(pUsername);
+                final Entry current = read(file, pUsername);
+                if (current == null || current.getVersion() < pVersion) {
+                    write(file, pUsername, Entry.invalidated(pVersion));
+                }
+                appendInvalidation(pUsername, pVersion);
+            } finally {
+                lock.close();
+            }
+        }
+
+        @Override
+        public synchronized Collection<String> pollInvalidations() throws IOException {
+            final FileChannel lock = lock();
+            try {
+                purgeIfDue();
+                final Set<String> usernames = new LinkedHashSet<String>();
+                if (!mLog.isFile()) {
+                    // the first log is generation 0, all of its invalidations are new.
+                    mGeneration = 0;
+                    mOffset = LOG_HEADER;
+                    return usernames;
+                }
+
+                final byte[] log = Files.readAllBytes(mLog.toPath());
+                final DataInputStream in = new DataInputStream(new ByteArrayInputStream(log));
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("not an invalidation log: " + mLog);
+                }
+                final long generation = in.readLong();
+                final boolean first = mGeneration < 0;
+                final boolean sameLog = generation == mGeneration;
+                if (sameLog) {
+                    in.skipBytes((int) (mOffset - LOG_HEADER));
+                }
+                while (in.available() > 0) {
+                    final long version = in.readLong();
+                    final String username = in.readUTF();
+                    // a rewritten log repeats the recent invalidations, only the ones not seen yet are new.
+                    if (!first && (sameLog || version > mLastVersion)) {
+                        usernames.add(username);
+                    }
+                    mLastVersion = Math.max(mLastVersion, version);
+                }
+                mGeneration = generation;
+                mOffset = log.length;
+                return usernames;
+            } finally {
+                lock.close();
+            }
+        }
+
+        @Override
+        public void close() {
+            // no file is kept open.
+        }
+
+        private File fileOf(String pUsername) {
+            return new File(mUsers, Util.getDigestOf(pUsername));
+        }
+
+        /**
+         * Locks the directory for the other controllers. Closing the returned channel releases the lock.
+         */
+        private FileChannel lock() throws IOException {
+            final FileChannel channel = FileChannel.open(mLock.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                channel.lock();
+                return channel;
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        private void appendInvalidation(String pUsername, long pVersion) throws IOException {
+            if (!mLog.isFile()) {
+                writeLog(0, new ArrayList<Object[]>());
+            } else if (mLog.length() > MAX_LOG_SIZE) {
+                rotateLog();
+            }
+
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream record = new DataOutputStream(bytes);
+            record.writeLong(pVersion);
+            record.writeUTF(pUsername);
+            final FileOutputStream out = new FileOutputStream(mLog, true);
+            try {
+                out.write(bytes.toByteArray());
+            } finally {
+                out.close();
+            }
+        }
+
+        /**
+         * Rewrites the log with the recent invalidations and the next generation.
+         */
+        private void rotateLog() throws IOException {
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(mLog.toPath())));
+            in.readInt();
+            final long generation = in.readLong();
+            final long keepAfter = System.currentTimeMillis() - LOG_RETENTION;
+            final List<Object[]> recent = new ArrayList<Object[]>();
+            while (in.available() > 0) {
+                final long version = in.readLong();
+                final String username = in.readUTF();
+                if (version >= keepAfter) {
+                    recent.add(new Object[] {version, username});
+                }
+            }
+            writeLog(generation + 1, recent);
+            LOG.log(Level.FINE, "rewrote the shared invalidation log with {0} recent invalidations", recent.size());
+        }
+
+        private void writeLog(long pGeneration, List<Object[]> pRecords) throws IOException {
+            final File temp = new File(mLog.getParentFile(), mLog.getName() + ".tmp");
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeLong(pGeneration);
+                for (Object[] current : pRecords) {
+                    out.writeLong((Long) current[0]);
+                    out.writeUTF((String) current[1]);
+                }
+            } finally {
+                out.close();
+            }
+            move(temp, mLog);
+        }
+
+        /**
+         * Deletes the entries that have expired long ago, so users that are no longer used do not pile up.
+         */
+        private void purgeIfDue() {
+            final long now = System.currentTimeMillis();
+            if (now < mLastPurge + PURGE_INTERVAL) {
+                return;
+            }
+            mLastPurge = now;
+
+            final File[] files = mUsers.listFiles();
+            int purged = 0;
+            for (File current : files != null ? files : new File[0]) {
+                try {
+                    final Entry entry = current.getName().endsWith(".tmp") ? null : read(current, null);
+                    if (entry == null || entry.getExpiresAt() + PURGE_AGE < now) {
+                        purged += current.delete() ? 1 : 0;
+                    }
+                } catch (IOException e) {
+                    LOG.log(Level.WARNING, "deleting unreadable shared cache entry " + current, e);
+                    purged += current.delete() ? 1 : 0;
+                }
+            }
+            LOG.log(Level.FINE, "purged {0} expired entries from the shared cache", purged);
+        }
+
+        /**
+         * @param pUsername
+         *            the expected username or <code>null</code> to accept any.
+         * @return the entry or <code>null</code> if there is none for the username.
+         */
+        private static Entry read(File pFile, String pUsername) throws IOException {
+            final DataInputStream in;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(pFile)));
+            } catch (FileNotFoundException e) {
+                return null;
+            }
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("not a shared cache entry of this version: " + pFile);
+                }
+                final String username = in.readUTF();
+                if (pUsername != null && !pUsername.equals(username)) {
+                    return null;
+                }
+                final byte kind = in.readByte();
+                final long version = in.readLong();
+                final long expiresAt = in.readLong();
+                if (kind == INVALIDATED) {
+                    return Entry.invalidated(version);
+                } else if (kind == NOT_FOUND) {
+                    return Entry.notFound(version, expiresAt);
+                }
+                final String name = in.readUTF();
+                final int count = in.readInt();
+                final List<String> groups = new ArrayList<String>(count);
+                for (int i = 0; i < count; i++) {
+                    groups.add(in.readUTF());
+                }
+                return Entry.found(name, groups, version, expiresAt);
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+        }
+
+        private static void write(File pFile, String pUsername, Entry pEntry) throws IOException {
+            final File temp = new File(pFile.getParentFile(), pFile.getName() + ".tmp");
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(pUsername);
+                out.writeByte(pEntry.isInvalidated() ? INVALIDATED : pEntry.isFound() ? FOUND : NOT_FOUND);
+                out.writeLong(pEntry.getVersion());
+                out.writeLong(pEntry.getExpiresAt());
+                if (pEntry.isFound()) {
+                    out.writeUTF(pEntry.getName());
+                    out.writeInt(pEntry.getGroups().size());
+                    for (String current : pEntry.getGroups()) {
+                        out.writeUTF(current);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            move(temp, pFile);
+        }
+
+        private static void move(File pSource, File pTarget) throws IOException {
+            try {
+                Files.move(pSource.toPath(), pTarget.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(pSource.toPath(), pTarget.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+}
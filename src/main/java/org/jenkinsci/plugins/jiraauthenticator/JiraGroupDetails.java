@@ -0,0 +1,37 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.util.Set;
+
+import hudson.security.GroupDetails;
+
+/**
+ * Jira Group.
+ * 
+ * @author stephan.watermeyer
+ *
+ */
+public class JiraGroupDetails extends GroupDetails {
+
+    private final String name;
+    private final Set<String> members;
+
+    public JiraGroupDetails(String name, Set<String> members) {
+        super();
+        this.name = name;
+        this.members = members;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the usernames of the members or <code>null</code> if the members have not been requested.
+     */
+    @Override
+    public Set<String> getMembers() {
+        return members;
+    }
+
+}
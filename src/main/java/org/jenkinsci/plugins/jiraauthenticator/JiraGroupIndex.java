@@ -0,0 +1,405 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.acegisecurity.AuthenticationException;
+import org.acegisecurity.AuthenticationServiceException;
+import org.acegisecurity.userdetails.UsernameNotFoundException;
+
+/**
+ * Index of the Jira groups and their members. It is filled in bulk by the {@link JiraWarmUp} and loads groups that are
+ * unknown or outdated from Jira on demand. Lookups of indexed groups do not contact Jira. If Jira can not be asked, the
+ * members of an outdated group are served for the grace period of the user cache after their expiry, restored groups
+ * until the snapshot is too old.
+ * <p>
+ * Most callers only need to know whether a group exists. This is checked with a single call to Jira and remembered for
+ * the same TTL, the members are only loaded if they are asked for.
+ * <p>
+ * Like in the {@link JiraUserCache}, a load that was already running when its group was invalidated, i.E. by a
+ * {@link JiraWebhook} event or during a long {@link JiraWarmUp}, may have read the members before the change. Its result
+ * is passed to the waiting callers but it is not indexed.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+class JiraGroupIndex {
+
+    /** Number of invalidated groups that are remembered, beyond that an invalidation counts for all groups. */
+    private static final int MAX_INVALIDATED = 10000;
+
+    private static final Logger LOG = Logger.getLogger(JiraGroupIndex.class.getName());
+
+    /**
+     * Loads the members of a group from Jira.
+     */
+    interface Loader {
+
+        /**
+         * @param pGroupname
+         *            the group to load.
+         * @return the usernames of the members.
+         * @throws UsernameNotFoundException
+         *             if the group does not exist in Jira.
+         * @throws AuthenticationException
+         *             if Jira could not be asked.
+         */
+        Set<String> load(String pGroupname) throws AuthenticationException;
+
+        /**
+         * @param pGroupname
+         *            the group to check.
+         * @throws UsernameNotFoundException
+         *             if the group does not exist in Jira.
+         * @throws AuthenticationException
+         *             if Jira could not be asked.
+         */
+        void checkExists(String pGroupname) throws AuthenticationException;
+    }
+
+    private final long mTtlInMS;
+    private final long mNotFoundTtlInMS;
+    private final long mGracePeriodInMS;
+    private final Loader mLoader;
+    private final ConcurrentMap<String, Entry> mGroups = new ConcurrentHashMap<String, Entry>();
+    private final RequestCoalescer<String, Entry> mLoads = new RequestCoalescer<String, Entry>();
+
+    /** Expiry in MS of groups that are known to exist without their members. */
+    private final ConcurrentMap<String, Long> mExisting = new ConcurrentHashMap<String, Long>();
+    private final RequestCoalescer<String, Boolean> mChecks = new RequestCoalescer<String, Boolean>();
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    /** Guards all writes of the groups and the invalidations, lookups do not take it. */
+    private final Object mWriteLock = new Object();
+
+    /** Counts the invalidations. A load that started before an invalidation of its group is not indexed. */
+    private final AtomicLong mInvalidations = new AtomicLong();
+    private final Map<String, Long> mInvalidatedAt = new HashMap<String, Long>();
+    private long mAllInvalidatedAt;
+
+    /**
+     * Default constructor.
+     *
+     * @param pTtl
+     *            seconds until an indexed group is loaded again.
+     * @param pNotFoundTtl
+     *            seconds a not existing group is remembered.
+     * @param pGracePeriod
+     *            seconds an outdated group is served if Jira can not be asked.
+     * @param pLoader
+     *            loads unknown groups.
+     */
+    JiraGroupIndex(int pTtl, int pNotFoundTtl, int pGracePeriod, Loader pLoader) {
+        this.mTtlInMS = TimeUnit.SECONDS.toMillis(pTtl);
+        this.mNotFoundTtlInMS = TimeUnit.SECONDS.toMillis(pNotFoundTtl);
+        this.mGracePeriodInMS = TimeUnit.SECONDS.toMillis(pGracePeriod);
+        this.mLoader = pLoader;
+    }
+
+    /**
+     * Returns the members of a group from the index or loads the group from Jira.
+     *
+     * @param pGroupname
+     *            the group.
+     * @return the usernames of the members.
+     * @throws UsernameNotFoundException
+     *             if the group does not exist in Jira.
+     * @throws AuthenticationException
+     *             if Jira could not be asked.
+     */
+    Set<String> getMembers(final String pGroupname) throws AuthenticationException {
+        final Entry indexed = mGroups.get(pGroupname);
+        if (indexed != null && System.currentTimeMillis() < indexed.mExpiresAt) {
+            mHits.incrementAndGet();
+            return indexed.resolve(pGroupname);
+        }
+
+        mMisses.incrementAndGet();
+        try {
+            return mLoads.execute(pGroupname, new Callable<Entry>() {
+                @Override
+                public Entry call() {
+                    return load(pGroupname);
+                }
+            }).resolve(pGroupname);
+        } catch (AuthenticationServiceException e) {
+            if (indexed == null || indexed.mMembers == null || System.currentTimeMillis() >= indexed.mServableUntil) {
+                throw e;
+            }
+            LOG.log(Level.WARNING, "loading group {0} failed, serving the indexed members: {1}", new Object[] {pGroupname, e.getMessage()});
+            return indexed.mMembers;
+        }
+    }
+
+    /**
+     * Checks that a group exists without loading its members, unless they are indexed anyway.
+     *
+     * @param pGroupname
+     *            the group.
+     * @throws UsernameNotFoundException
+     *             if the group does not exist in Jira.
+     * @throws AuthenticationException
+     *             if Jira could not be asked.
+     */
+    void checkExists(final String pGroupname) throws AuthenticationException {
+        final long now = System.currentTimeMillis();
+        final Entry indexed = mGroups.get(pGroupname);
+        if (indexed != null && now < indexed.mExpiresAt) {
+            mHits.incrementAndGet();
+            indexed.resolve(pGroupname);
+            return;
+        }
+        final Long existsUntil = mExisting.get(pGroupname);
+        if (existsUntil != null && now < existsUntil) {
+            mHits.incrementAndGet();
+            return;
+        }
+
+        mMisses.incrementAndGet();
+        try {
+            if (!mChecks.execute(pGroupname, new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return check(pGroupname);
+                }
+            })) {
+                throw new UsernameNotFoundException("Group does not exist: " + pGroupname);
+            }
+        } catch (AuthenticationServiceException e) {
+            if (indexed == null || indexed.mMembers == null || System.currentTimeMillis() >= indexed.mServableUntil) {
+                throw e;
+            }
+            LOG.log(Level.WARNING, "checking group {0} failed, serving the indexed group: {1}", new Object[] {pGroupname, e.getMessage()});
+        }
+    }
+
+    /**
+     * @return the current invalidation mark, taken before a bulk load and passed to {@link #putAll(Map, long)}
+     *         afterwards.
+     */
+    long getInvalidationMark() {
+        return mInvalidations.get();
+    }
+
+    /**
+     * Replaces the indexed groups with groups that have been loaded in bulk. Groups that have been invalidated since
+     * the load started are skipped.
+     *
+     * @param pGroups
+     *            the members by group name.
+     * @param pMark
+     *            the {@link #getInvalidationMark()} before the load started.
+     */
+    void putAll(Map<String, Set<String>> pGroups, long pMark) {
+        final long expiresAt = System.currentTimeMillis() + mTtlInMS;
+        for (Map.Entry<String, Set<String>> current : pGroups.entrySet()) {
+            final Entry entry = new Entry(Collections.unmodifiableSet(current.getValue()), expiresAt, expiresAt + mGracePeriodInMS);
+            synchronized (mWriteLock) {
+                if (!isInvalidatedSince(current.getKey(), pMark)) {
+                    mGroups.put(current.getKey(), entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds groups from a {@link JiraSnapshot}. They count as expired, so they are loaded from Jira on first use, but
+     * they are served until the given time if Jira can not be asked. Groups that are already indexed are kept.
+     *
+     * @param pGroups
+     *            the members by group name.
+     * @param pServableUntil
+     *            time in MS until the groups may be served without Jira.
+     */
+    void restore(Map<String, Set<String>> pGroups, long pServableUntil) {
+        final long now = System.currentTimeMillis();
+        synchronized (mWriteLock) {
+            for (Map.Entry<String, Set<String>> current : pGroups.entrySet()) {
+                mGroups.putIfAbsent(current.getKey(), new Entry(Collections.unmodifiableSet(current.getValue()), now, pServableUntil));
+            }
+        }
+    }
+
+    /**
+     * Removes a group, so that it is loaded from Jira again on the next call.
+     *
+     * @param pGroupname
+     *            the group.
+     */
+    void invalidate(String pGroupname) {
+        synchronized (mWriteLock) {
+            markInvalidated(pGroupname);
+            mGroups.remove(pGroupname);
+            mExisting.remove(pGroupname);
+        }
+    }
+
+    /**
+     * Removes every group that has the user as member, i.E. after Jira reported that the memberships of the user have
+     * changed.
+     *
+     * @param pUsername
+     *            the user.
+     */
+    void invalidateMember(String pUsername) {
+        final String key = JiraUserCache.key(pUsername);
+        for (Map.Entry<String, Entry> current : mGroups.entrySet()) {
+            final Set<String> members = current.getValue().mMembers;
+            if (members != null && containsMember(members, pUsername, key)) {
+                synchronized (mWriteLock) {
+                    markInvalidated(current.getKey());
+                    mGroups.remove(current.getKey(), current.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * @param pGroupname
+     *            the group.
+     * @return the indexed members, including outdated ones, without asking Jira or <code>null</code> if the group is
+     *         not indexed.
+     */
+    Set<String> getIndexedMembers(String pGroupname) {
+        final Entry indexed = mGroups.get(pGroupname);
+        return indexed != null ? indexed.mMembers : null;
+    }
+
+    int size() {
+        return mGroups.size();
+    }
+
+    /**
+     * @return number of lookups answered from the index.
+     */
+    long getHits() {
+        return mHits.get();
+    }
+
+    /**
+     * @return number of lookups that had to ask Jira.
+     */
+    long getMisses() {
+        return mMisses.get();
+    }
+
+    /**
+     * Jira matches usernames without regard to case, so a member is also found if Jira reports it in another case.
+     */
+    private static boolean containsMember(Set<String> pMembers, String pUsername, String pKey) {
+        if (pMembers.contains(pUsername)) {
+            return true;
+        }
+        for (String current : pMembers) {
+            if (JiraUserCache.key(current).equals(pKey)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Entry load(String pGroupname) {
+        final long mark = getInvalidationMark();
+        Entry loaded;
+        try {
+            final long expiresAt = System.currentTimeMillis() + mTtlInMS;
+            loaded = new Entry(Collections.unmodifiableSet(new HashSet<String>(mLoader.load(pGroupname))), expiresAt, expiresAt + mGracePeriodInMS);
+        } catch (UsernameNotFoundException e) {
+            LOG.log(Level.FINE, "remembering unknown group {0}", pGroupname);
+            final long expiresAt = System.currentTimeMillis() + mNotFoundTtlInMS;
+            loaded = new Entry(null, expiresAt, expiresAt);
+        }
+        synchronized (mWriteLock) {
+            if (isInvalidatedSince(pGroupname, mark)) {
+                LOG.log(Level.FINE, "group {0} was invalidated while it was loaded, not indexing it", pGroupname);
+            } else {
+                mGroups.put(pGroupname, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    private boolean check(String pGroupname) {
+        final long mark = getInvalidationMark();
+        boolean exists;
+        try {
+            mLoader.checkExists(pGroupname);
+            exists = true;
+        } catch (UsernameNotFoundException e) {
+            exists = false;
+        }
+        synchronized (mWriteLock) {
+            if (isInvalidatedSince(pGroupname, mark)) {
+                LOG.log(Level.FINE, "group {0} was invalidated while it was checked, not remembering it", pGroupname);
+            } else if (exists) {
+                mExisting.put(pGroupname, System.currentTimeMillis() + mTtlInMS);
+            } else {
+                LOG.log(Level.FINE, "remembering unknown group {0}", pGroupname);
+                final long expiresAt = System.currentTimeMillis() + mNotFoundTtlInMS;
+                mGroups.put(pGroupname, new Entry(null, expiresAt, expiresAt));
+                mExisting.remove(pGroupname);
+            }
+        }
+        return exists;
+    }
+
+    /**
+     * Must be called while holding the write lock, together with the removal of the group.
+     */
+    private void markInvalidated(String pGroupname) {
+        final long mark = mInvalidations.incrementAndGet();
+        if (mInvalidatedAt.size() >= MAX_INVALIDATED) {
+            // forgetting the groups is safe if the invalidation counts for all of them.
+            mInvalidatedAt.clear();
+            mAllInvalidatedAt = mark;
+        } else {
+            mInvalidatedAt.put(pGroupname, mark);
+        }
+    }
+
+    /**
+     * Must be called while holding the write lock, together with the put that depends on it.
+     */
+    private boolean isInvalidatedSince(String pGroupname, long pMark) {
+        if (mAllInvalidatedAt > pMark) {
+            return true;
+        }
+        final Long invalidatedAt = mInvalidatedAt.get(pGroupname);
+        return invalidatedAt != null && invalidatedAt > pMark;
+    }
+
+    /**
+     * An indexed group. <code>null</code> members mark a group that does not exist in Jira.
+     */
+    private static final class Entry {
+
+        private final Set<String> mMembers;
+        private final long mExpiresAt;
+        private final long mServableUntil;
+
+        Entry(Set<String> pMembers, long pExpiresAt, long pServableUntil) {
+            this.mMembers = pMembers;
+            this.mExpiresAt = pExpiresAt;
+            this.mServableUntil = pServableUntil;
+        }
+
+        Set<String> resolve(String pGroupname) {
+            if (mMembers == null) {
+                throw new UsernameNotFoundException("Group does not exist: " + pGroupname);
+            }
+            return mMembers;
+        }
+    }
+
+}
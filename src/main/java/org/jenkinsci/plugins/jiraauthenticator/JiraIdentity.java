@@ -0,0 +1,96 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.util.List;
+
+import org.acegisecurity.GrantedAuthority;
+
+/**
+ * The parts of a Jira user that are used by this plugin: its name and the authorities of its groups.
+ * 
+ * @author stephan.watermeyer
+ *
+ */
+public class JiraIdentity {
+
+    private final String name;
+    private final List<GrantedAuthority> groups;
+    private final String version;
+    private final int totalGroups;
+
+    public JiraIdentity(String name, List<GrantedAuthority> groups) {
+        this(name, groups, null);
+    }
+
+    /**
+     * @param name
+     *            the username.
+     * @param groups
+     *            the authorities of the groups or <code>null</code> if they are the same as in the previous version.
+     * @param version
+     *            the entity tag Jira sent with the user or <code>null</code>.
+     */
+    JiraIdentity(String name, List<GrantedAuthority> groups, String version) {
+        this(name, groups, version, -1);
+    }
+
+    /**
+     * @param name
+     *            the username.
+     * @param groups
+     *            the authorities of the groups or <code>null</code> if they are the same as in the previous version.
+     * @param version
+     *            the entity tag Jira sent with the user or <code>null</code>.
+     * @param totalGroups
+     *            the number of groups of the user in Jira, more than the given groups if Jira has returned only the
+     *            first page, -1 if unknown.
+     */
+    JiraIdentity(String name, List<GrantedAuthority> groups, String version, int totalGroups) {
+        super();
+        this.name = name;
+        this.groups = groups;
+        this.version = version;
+        this.totalGroups = totalGroups;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the shared authorities of the groups, empty if the groups have not been requested.
+     */
+    public List<GrantedAuthority> getGroups() {
+        return groups;
+    }
+
+    /**
+     * @return the entity tag Jira sent with the user or <code>null</code>.
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return TRUE if the user is the same as the previous version the conditional request was made with.
+     */
+    public boolean isUnchanged() {
+        return groups == null;
+    }
+
+    int getTotalGroups() {
+        return totalGroups;
+    }
+
+    /**
+     * @return TRUE if Jira has returned only the first page of the groups.
+     */
+    boolean hasMoreGroups() {
+        return groups != null && totalGroups > groups.size();
+    }
+
+    @Override
+    public String toString() {
+        return "JiraIdentity [name=" + name + ", groups=" + (groups == null ? "unchanged" : String.valueOf(groups.size())) + "]";
+    }
+
+}
@@ -0,0 +1,114 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets in the style of HdrHistogram. Every power of two is split into 16
+ * linear sub-buckets, so a recorded value is off by at most 1/16 while the whole range from 1 microsecond to several
+ * hours fits into a few hundred counters. Recording is a handful of atomic increments and does not allocate.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+public final class JiraLatencyHistogram {
+
+    /** 2^SUB_BUCKET_BITS linear sub-buckets per power of two. */
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Values above 2^MAX_EXPONENT microseconds, about 19 hours, are recorded in the last bucket. */
+    private static final int MAX_EXPONENT = 36;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * Records one duration.
+     *
+     * @param pDurationInNS
+     *            the duration in nanoseconds.
+     */
+    public void record(long pDurationInNS) {
+        final long micros = Math.min(Math.max(TimeUnit.NANOSECONDS.toMicros(pDurationInNS), 0), MAX_VALUE);
+        mBuckets.incrementAndGet(index(micros));
+        mCount.incrementAndGet();
+        mSum.addAndGet(micros);
+
+        long max = mMax.get();
+        while (micros > max && !mMax.compareAndSet(max, micros)) {
+            max = mMax.get();
+        }
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public double getMeanMillis() {
+        final long count = mCount.get();
+        return count == 0 ? 0 : toMillis(mSum.get()) / count;
+    }
+
+    public double getMaxMillis() {
+        return toMillis(mMax.get());
+    }
+
+    /**
+     * Returns the value below which the given share of the recorded durations lies. The result is the upper bound of
+     * the bucket, so it is never lower than the exact percentile.
+     *
+     * @param pPercentile
+     *            the percentile, i.E. 99.0.
+     * @return the duration in milliseconds, 0 if nothing has been recorded.
+     */
+    public double getPercentileMillis(double pPercentile) {
+        long total = 0;
+        final long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = mBuckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(total * pPercentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return toMillis(Math.min(upperBound(i), mMax.get()));
+            }
+        }
+        return toMillis(mMax.get());
+    }
+
+    private static int index(long pMicros) {
+        if (pMicros < SUB_BUCKETS) {
+            return (int) pMicros;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(pMicros);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((pMicros >>> shift) - SUB_BUCKETS);
+    }
+
+    private static long upperBound(int pIndex) {
+        if (pIndex < SUB_BUCKETS) {
+            return pIndex;
+        }
+        final int shift = pIndex / SUB_BUCKETS - 1;
+        final long lower = (long) (SUB_BUCKETS + pIndex % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    private static double toMillis(long pMicros) {
+        return pMicros / 1000.0;
+    }
+
+}
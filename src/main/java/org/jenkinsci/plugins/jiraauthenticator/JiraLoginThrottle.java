@@ -0,0 +1,253 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.acegisecurity.BadCredentialsException;
+
+/**
+ * Throttles failed logins per username and per client address, so that bots with outdated passwords or scanners that
+ * try usernames do not reach Jira and do not trigger its CAPTCHA or lockout for the real users.
+ * <p>
+ * After the threshold of consecutive failures, further logins are rejected locally with an exponential back-off that
+ * starts at one second and doubles with every failure up to the maximum block time. The last rejected password of a
+ * user is remembered as salted PBKDF2 digest, so the same wrong password is rejected locally for the maximum block time.
+ * A HTTP 403 from Jira means that Jira already demands a CAPTCHA, the user is blocked for the maximum block time right
+ * away then. A successful login resets the user.
+ * <p>
+ * Jira does not distinguish the case of usernames, so users are tracked by their {@link JiraUserCache#key(String)} and
+ * a bot can not escape the throttle by changing the case or adding blanks.
+ * <p>
+ * The state of every username and address is an immutable value in a {@link ConcurrentHashMap} that is replaced with
+ * compare-and-set, so concurrent logins never wait for a lock.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+class JiraLoginThrottle {
+
+    /** Default number of consecutive failures of a user before it is throttled, 0 disables the throttle. */
+    static final int DEFAULT_THRESHOLD = 5;
+
+    /** Default number of failures from one address before it is throttled. */
+    static final int DEFAULT_ADDRESS_THRESHOLD = 50;
+
+    /** Default maximum time in seconds a user or address is blocked. */
+    static final int DEFAULT_MAX_BLOCK = 300;
+
+    /** First back-off after the threshold, doubled with every further failure. */
+    private static final long BACKOFF_MS = 1000;
+
+    /** Expired states are only purged once a map holds more entries than this. */
+    private static final int PURGE_SIZE = 10000;
+
+    private static final int SALT_LENGTH = 16;
+
+    private static final Logger LOG = Logger.getLogger(JiraLoginThrottle.class.getName());
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int mThreshold;
+    private final int mAddressThreshold;
+    private final long mMaxBlockInMS;
+    private final ConcurrentMap<String, State> mUsers = new ConcurrentHashMap<String, State>();
+    private final ConcurrentMap<String, State> mAddresses = new ConcurrentHashMap<String, State>();
+    private final AtomicLong mThrottled = new AtomicLong();
+
+    /**
+     * Default constructor.
+     *
+     * @param pThreshold
+     *            consecutive failures of a user before it is throttled.
+     * @param pAddressThreshold
+     *            failures from one address before it is throttled, 0 to not throttle addresses.
+     * @param pMaxBlock
+     *            maximum seconds a user or address is blocked.
+     */
+    JiraLoginThrottle(int pThreshold, int pAddressThreshold, int pMaxBlock) {
+        this.mThreshold = pThreshold;
+        this.mAddressThreshold = pAddressThreshold;
+        this.mMaxBlockInMS = TimeUnit.SECONDS.toMillis(pMaxBlock);
+    }
+
+    /**
+     * Rejects the login locally if the user or the address is blocked or if the password has just been rejected.
+     *
+     * @param pUsername
+     *            the username as given by the user.
+     * @param pPassword
+     *            the password in clear text.
+     * @param pAddress
+     *            the address of the client or <code>null</code> if unknown.
+     * @throws ThrottledException
+     *             if Jira must not be asked.
+     */
+    void check(String pUsername, String pPassword, String pAddress) throws ThrottledException {
+        final long now = System.currentTimeMillis();
+        final State address = pAddress != null ? mAddresses.get(pAddress) : null;
+        if (address != null && now < address.mBlockedUntil) {
+            reject("too many failed logins from " + pAddress + ", retry in " + seconds(address.mBlockedUntil - now) + "s");
+        }
+
+        final State user = mUsers.get(JiraUserCache.key(pUsername));
+        if (user == null) {
+            return;
+        }
+        if (now < user.mBlockedUntil) {
+            reject("too many failed logins of user " + pUsername + ", retry in " + seconds(user.mBlockedUntil - now) + "s");
+        }
+        if (user.mDigest != null && now < user.mLastFailure + mMaxBlockInMS) {
+            final byte[] digest = JiraCredentialCache.hash(pPassword, user.mSalt);
+            if (digest != null && MessageDigest.isEqual(digest, user.mDigest)) {
+                reject("the password of user " + pUsername + " has just been rejected by Jira");
+            }
+        }
+    }
+
+    /**
+     * Records a login that Jira has rejected.
+     *
+     * @param pUsername
+     *            the username as given by the user.
+     * @param pPassword
+     *            the rejected password in clear text.
+     * @param pAddress
+     *            the address of the client or <code>null</code> if unknown.
+     * @param pCaptcha
+     *            TRUE if Jira answered with HTTP 403, i.E. it demands a CAPTCHA.
+     */
+    void failure(String pUsername, String pPassword, String pAddress, boolean pCaptcha) {
+        final byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        final byte[] digest = pPassword != null ? JiraCredentialCache.hash(pPassword, salt) : null;
+
+        final State user = update(mUsers, JiraUserCache.key(pUsername), mThreshold, pCaptcha, salt, digest);
+        if (user.mBlockedUntil > user.mLastFailure) {
+            LOG.log(Level.INFO, "blocking logins of user {0} for {1}s after {2} failures",
+                    new Object[] {pUsername, seconds(user.mBlockedUntil - user.mLastFailure), user.mFailures});
+        }
+        if (pAddress != null && mAddressThreshold > 0) {
+            final State address = update(mAddresses, pAddress, mAddressThreshold, false, null, null);
+            if (address.mBlockedUntil > address.mLastFailure) {
+                LOG.log(Level.INFO, "blocking logins from {0} for {1}s after {2} failures",
+                        new Object[] {pAddress, seconds(address.mBlockedUntil - address.mLastFailure), address.mFailures});
+            }
+        }
+    }
+
+    /**
+     * Records a successful login, the failures of the user are forgotten.
+     *
+     * @param pUsername
+     *            the username as given by the user.
+     */
+    void success(String pUsername) {
+        mUsers.remove(JiraUserCache.key(pUsername));
+    }
+
+    /**
+     * @return number of logins that have been rejected without asking Jira.
+     */
+    long getThrottled() {
+        return mThrottled.get();
+    }
+
+    /**
+     * @return number of users with recent failures.
+     */
+    int getTrackedUsers() {
+        return mUsers.size();
+    }
+
+    /**
+     * @return number of addresses with recent failures.
+     */
+    int getTrackedAddresses() {
+        return mAddresses.size();
+    }
+
+    private State update(ConcurrentMap<String, State> pStates, String pKey, int pThreshold, boolean pCaptcha, byte[] pSalt, byte[] pDigest) {
+        final long now = System.currentTimeMillis();
+        if (pStates.size() > PURGE_SIZE) {
+            purge(pStates, now);
+        }
+
+        while (true) {
+            final State current = pStates.get(pKey);
+            // failures are only counted as consecutive while they are within the maximum block time.
+            final int failures = current == null || now >= current.mLastFailure + mMaxBlockInMS ? 1 : current.mFailures + 1;
+            final long blockedUntil;
+            if (pCaptcha) {
+                blockedUntil = now + mMaxBlockInMS;
+            } else if (failures >= pThreshold) {
+                blockedUntil = now + Math.min(BACKOFF_MS << Math.min(failures - pThreshold, 20), mMaxBlockInMS);
+            } else {
+                blockedUntil = 0;
+            }
+
+            final State updated = new State(failures, now, blockedUntil, pSalt, pDigest);
+            if (current == null ? pStates.putIfAbsent(pKey, updated) == null : pStates.replace(pKey, current, updated)) {
+                return updated;
+            }
+        }
+    }
+
+    private void purge(ConcurrentMap<String, State> pStates, long pNow) {
+        for (Iterator<Map.Entry<String, State>> it = pStates.entrySet().iterator(); it.hasNext();) {
+            final State current = it.next().getValue();
+            if (pNow >= current.mLastFailure + mMaxBlockInMS && pNow >= current.mBlockedUntil) {
+                it.remove();
+            }
+        }
+    }
+
+    private void reject(String pMessage) throws ThrottledException {
+        mThrottled.incrementAndGet();
+        LOG.fine(pMessage);
+        throw new ThrottledException(pMessage);
+    }
+
+    private static long seconds(long pMillis) {
+        return TimeUnit.MILLISECONDS.toSeconds(pMillis + 999);
+    }
+
+    /**
+     * The recent failures of a user or an address.
+     */
+    private static final class State {
+
+        private final int mFailures;
+        private final long mLastFailure;
+        private final long mBlockedUntil;
+        private final byte[] mSalt;
+        private final byte[] mDigest;
+
+        State(int pFailures, long pLastFailure, long pBlockedUntil, byte[] pSalt, byte[] pDigest) {
+            this.mFailures = pFailures;
+            this.mLastFailure = pLastFailure;
+            this.mBlockedUntil = pBlockedUntil;
+            this.mSalt = pSalt;
+            this.mDigest = pDigest;
+        }
+    }
+
+    /**
+     * A login that has been rejected without asking Jira.
+     */
+    static class ThrottledException extends BadCredentialsException {
+
+        private static final long serialVersionUID = 5310422945016236871L;
+
+        ThrottledException(String pMessage) {
+            super(pMessage);
+        }
+    }
+
+}
@@ -0,0 +1,380 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.io.EOFException;
+import java.lang.management.ManagementFactory;
+import java.net.SocketTimeoutException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.ws.rs.WebApplicationException;
+
+import org.acegisecurity.userdetails.UsernameNotFoundException;
+import org.apache.http.conn.ConnectTimeoutException;
+
+import com.google.gson.stream.MalformedJsonException;
+
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.PeriodicWork;
+import hudson.model.UnprotectedRootAction;
+import hudson.security.SecurityRealm;
+import jenkins.model.Jenkins;
+
+/**
+ * Counters and latency histograms of the calls to Jira. The realm records <code>authenticate</code> and
+ * <code>loadUserByUsername</code> including the caches, the service records every outbound HTTP call. Each call is
+ * counted by its {@link Outcome}.
+ * <p>
+ * The metrics are shown on the {@link JiraMetricsLink} page and registered as MXBean, see {@link JiraMetricsMXBean}.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+public final class JiraMetrics implements JiraMetricsMXBean {
+
+    static final String AUTHENTICATE = "authenticate";
+    static final String LOAD_USER = "loadUserByUsername";
+    static final String LOAD_USERS = "loadUsersByUsername";
+    static final String HTTP = "http";
+
+    private static final String OBJECT_NAME = "org.jenkinsci.plugins.jiraauthenticator:type=JiraMetrics";
+
+    private static final Logger LOG = Logger.getLogger(JiraMetrics.class.getName());
+
+    private static final JiraMetrics INSTANCE = new JiraMetrics();
+
+    /**
+     * The result of a call.
+     */
+    public enum Outcome {
+        SUCCESS,
+        /** HTTP 401, wrong password. */
+        UNAUTHORIZED,
+        /** HTTP 403, i.E. the user has to solve a CAPTCHA. */
+        FORBIDDEN,
+        /** Rejected by the login throttle without asking Jira. */
+        THROTTLED,
+        NOT_FOUND,
+        TIMEOUT,
+        /** The answer of Jira could not be read. */
+        FORMAT_ERROR,
+        ERROR
+    }
+
+    private final ConcurrentMap<String, Operation> mOperations = new ConcurrentHashMap<String, Operation>();
+
+    private JiraMetrics() {
+        super();
+    }
+
+    public static JiraMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Records a finished call.
+     *
+     * @param pOperation
+     *            name of the operation, i.E. {@link #AUTHENTICATE}.
+     * @param pStartInNS
+     *            {@link System#nanoTime()} at the start of the call.
+     * @param pOutcome
+     *            the result.
+     */
+    void record(String pOperation, long pStartInNS, Outcome pOutcome) {
+        operation(pOperation).record(System.nanoTime() - pStartInNS, pOutcome);
+    }
+
+    /**
+     * Records a failed call.
+     *
+     * @param pOperation
+     *            name of the operation, i.E. {@link #AUTHENTICATE}.
+     * @param pStartInNS
+     *            {@link System#nanoTime()} at the start of the call.
+     * @param pError
+     *            the failure.
+     */
+    void record(String pOperation, long pStartInNS, Throwable pError) {
+        record(pOperation, pStartInNS, outcomeOf(pError));
+    }
+
+    /**
+     * Maps a failure to its outcome by looking at the causes the service has wrapped.
+     *
+     * @param pError
+     *            the failure.
+     * @return the outcome.
+     */
+    static Outcome outcomeOf(Throwable pError) {
+        if (pError instanceof JiraLoginThrottle.ThrottledException) {
+            return Outcome.THROTTLED;
+        } else if (pError instanceof UsernameNotFoundException) {
+            return Outcome.NOT_FOUND;
+        }
+
+        for (Throwable cause = pError; cause != null; cause = cause.getCause()) {
+            if (cause instanceof WebApplicationException) {
+                final int status = ((WebApplicationException) cause).getResponse().getStatus();
+                if (status == 401) {
+                    return Outcome.UNAUTHORIZED;
+                } else if (status == 403) {
+                    return Outcome.FORBIDDEN;
+                } else if (status == 404) {
+                    return Outcome.NOT_FOUND;
+                }
+                return Outcome.ERROR;
+            } else if (cause instanceof SocketTimeoutException || cause instanceof ConnectTimeoutException) {
+                return Outcome.TIMEOUT;
+            } else if (cause instanceof CancellationException) {
+                return Outcome.ERROR;
+            } else if (cause instanceof MalformedJsonException || cause instanceof EOFException || cause instanceof IllegalStateException) {
+                return Outcome.FORMAT_ERROR;
+            }
+        }
+        return Outcome.ERROR;
+    }
+
+    /**
+     * @return all operations that have been recorded, sorted by name.
+     */
+    public List<Operation> getOperations() {
+        final List<Operation> operations = new ArrayList<Operation>(mOperations.values());
+        Collections.sort(operations, new Comparator<Operation>() {
+            @Override
+            public int compare(Operation pFirst, Operation pSecond) {
+                return pFirst.getName().compareTo(pSecond.getName());
+            }
+        });
+        return operations;
+    }
+
+    @Override
+    public long getAuthenticateCount() {
+        return operation(AUTHENTICATE).getHistogram().getCount();
+    }
+
+    @Override
+    public double getAuthenticateP99Millis() {
+        return operation(AUTHENTICATE).getHistogram().getPercentileMillis(99);
+    }
+
+    @Override
+    public long getLoadUserCount() {
+        return operation(LOAD_USER).getHistogram().getCount();
+    }
+
+    @Override
+    public double getLoadUserP99Millis() {
+        return operation(LOAD_USER).getHistogram().getPercentileMillis(99);
+    }
+
+    @Override
+    public long getHttpCallCount() {
+        return operation(HTTP).getHistogram().getCount();
+    }
+
+    @Override
+    public double getHttpCallP99Millis() {
+        return operation(HTTP).getHistogram().getPercentileMillis(99);
+    }
+
+    @Override
+    public long getHttpTimeouts() {
+        return operation(HTTP).getCount(Outcome.TIMEOUT);
+    }
+
+    @Override
+    public Map<String, Long> getOutcomes() {
+        final Map<String, Long> outcomes = new LinkedHashMap<String, Long>();
+        for (Operation current : getOperations()) {
+            for (Map.Entry<Outcome, Long> outcome : current.getOutcomes().entrySet()) {
+                outcomes.put(current.getName() + "." + outcome.getKey(), outcome.getValue());
+            }
+        }
+        return outcomes;
+    }
+
+    @Override
+    public Map<String, String> getStatistics() {
+        final Map<String, String> statistics = new LinkedHashMap<String, String>();
+        final Jenkins jenkins = Jenkins.getInstance();
+        final SecurityRealm securityRealm = jenkins != null ? jenkins.getSecurityRealm() : null;
+        if (!(securityRealm instanceof JiraSecurityRealm)) {
+            return statistics;
+        }
+
+        final JiraSecurityRealm realm = (JiraSecurityRealm) securityRealm;
+        final JiraUserCache userCache = realm.getUserCache();
+        if (userCache != null) {
+            final long lookups = userCache.getHits() + userCache.getStaleHits() + userCache.getMisses();
+            statistics.put("userCache.size", String.valueOf(userCache.size()));
+            statistics.put("userCache.hits", String.valueOf(userCache.getHits()));
+            statistics.put("userCache.staleHits", String.valueOf(userCache.getStaleHits()));
+            statistics.put("userCache.misses", String.valueOf(userCache.getMisses()));
+            statistics.put("userCache.hitRatio", lookups == 0 ? "-" : String.format("%.3f", (lookups - userCache.getMisses()) / (double) lookups));
+            statistics.put("userCache.evictions", String.valueOf(userCache.getEvictions()));
+            statistics.put("userCache.loads", String.valueOf(userCache.getLoadTimes().getCount()));
+            statistics.put("userCache.loadFailures", String.valueOf(userCache.getLoadFailures()));
+            statistics.put("userCache.unchangedLoads", String.valueOf(userCache.getUnchangedLoads()));
+            statistics.put("userCache.loadTimeMeanMillis", String.format("%.1f", userCache.getLoadTimes().getMeanMillis()));
+            statistics.put("userCache.loadTimeP99Millis", String.format("%.1f", userCache.getLoadTimes().getPercentileMillis(99)));
+            statistics.put("userCache.refreshFailures", String.valueOf(userCache.getRefreshFailures()));
+            statistics.put("userCache.sharedHits", String.valueOf(userCache.getSharedHits()));
+            statistics.put("userCache.sharedFailures", String.valueOf(userCache.getSharedFailures()));
+        }
+
+        final JiraGroupIndex groupIndex = realm.getGroupIndex();
+        statistics.put("groupIndex.size", String.valueOf(groupIndex.size()));
+        statistics.put("groupIndex.hits", String.valueOf(groupIndex.getHits()));
+        statistics.put("groupIndex.misses", String.valueOf(groupIndex.getMisses()));
+
+        final JiraCredentialCache credentialCache = realm.getCredentialCache();
+        if (credentialCache != null) {
+            statistics.put("loginCache.size", String.valueOf(credentialCache.size()));
+            statistics.put("loginCache.hits", String.valueOf(credentialCache.getHits()));
+            statistics.put("loginCache.misses", String.valueOf(credentialCache.getMisses()));
+            statistics.put("loginCache.evictions", String.valueOf(credentialCache.getEvictions()));
+        }
+
+        final JiraLoginThrottle throttle = realm.getLoginThrottle();
+        if (throttle != null) {
+            statistics.put("loginThrottle.throttled", String.valueOf(throttle.getThrottled()));
+            statistics.put("loginThrottle.trackedUsers", String.valueOf(throttle.getTrackedUsers()));
+            statistics.put("loginThrottle.trackedAddresses", String.valueOf(throttle.getTrackedAddresses()));
+        }
+
+        final JiraTracer tracer = realm.getTracer();
+        statistics.put("tracer.sampledCalls", String.valueOf(tracer.getSampledCalls()));
+        statistics.put("tracer.slowCalls", String.valueOf(tracer.getSlowCalls()));
+
+        final JiraCircuitBreaker breaker = realm.getCircuitBreaker();
+        statistics.put("circuitBreaker.state", breaker.getState().name());
+        statistics.put("circuitBreaker.rejectedCalls", String.valueOf(breaker.getRejectedCalls()));
+        statistics.put("circuitBreaker.transitions", String.valueOf(breaker.getTransitions()));
+
+        final JiraBulkhead bulkhead = realm.getBulkhead();
+        statistics.put("bulkhead.activeCalls", bulkhead.getActiveCalls() + " of " + bulkhead.getMaxConcurrent());
+        statistics.put("bulkhead.waitingCalls", String.valueOf(bulkhead.getWaitingCalls()));
+        statistics.put("bulkhead.rejectedCalls", String.valueOf(bulkhead.getRejectedCalls()));
+
+        try {
+            final JiraTlsContext tls = realm.getTlsContext();
+            statistics.put("tls.handshakes", String.valueOf(tls.getHandshakes()));
+            statistics.put("tls.resumedHandshakes", String.valueOf(tls.getResumedHandshakes()));
+            statistics.put("tls.cachedSessions", String.valueOf(tls.getCachedSessions()));
+        } catch (GeneralSecurityException e) {
+            statistics.put("tls", "unavailable: " + e.getMessage());
+        }
+
+        try {
+            for (JiraEndpoints.Endpoint endpoint : realm.getEndpoints().getEndpoints()) {
+                final String prefix = "endpoint." + endpoint.getConnection().getUrl();
+                statistics.put(prefix + ".healthy", String.valueOf(endpoint.isHealthy(System.currentTimeMillis())));
+                statistics.put(prefix + ".outstanding", String.valueOf(endpoint.getOutstanding()));
+                statistics.put(prefix + ".latencyMillis", String.format("%.1f", endpoint.getLatencyMillis()));
+            }
+        } catch (GeneralSecurityException e) {
+            statistics.put("endpoints", "unavailable: " + e.getMessage());
+        }
+
+        final JiraWebhook webhook = jenkins.getExtensionList(UnprotectedRootAction.class).get(JiraWebhook.class);
+        if (webhook != null && realm.getWebhookSecret() != null) {
+            statistics.put("webhook.events", String.valueOf(webhook.getEvents()));
+            statistics.put("webhook.rejected", String.valueOf(webhook.getRejected()));
+        }
+
+        final JiraWarmUp warmUp = PeriodicWork.all().get(JiraWarmUp.class);
+        if (warmUp != null && realm.getWarmUpInterval() > 0) {
+            statistics.put("warmUp.progress", warmUp.getProgress());
+        }
+        return statistics;
+    }
+
+    /**
+     * Registers the MXBean once the plugin has started.
+     */
+    @Initializer(after = InitMilestone.PLUGINS_STARTED)
+    public static void registerMBean() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(INSTANCE, name);
+        } catch (JMException e) {
+            LOG.log(Level.WARNING, "unable to register the Jira metrics MBean", e);
+        }
+    }
+
+    private Operation operation(String pName) {
+        Operation operation = mOperations.get(pName);
+        if (operation == null) {
+            final Operation created = new Operation(pName);
+            operation = mOperations.putIfAbsent(pName, created);
+            if (operation == null) {
+                operation = created;
+            }
+        }
+        return operation;
+    }
+
+    /**
+     * The latency histogram and the outcome counters of one operation.
+     */
+    public static final class Operation {
+
+        private final String mName;
+        private final JiraLatencyHistogram mHistogram = new JiraLatencyHistogram();
+        private final AtomicLongArray mOutcomes = new AtomicLongArray(Outcome.values().length);
+
+        Operation(String pName) {
+            this.mName = pName;
+        }
+
+        void record(long pDurationInNS, Outcome pOutcome) {
+            mHistogram.record(pDurationInNS);
+            mOutcomes.incrementAndGet(pOutcome.ordinal());
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public JiraLatencyHistogram getHistogram() {
+            return mHistogram;
+        }
+
+        public long getCount(Outcome pOutcome) {
+            return mOutcomes.get(pOutcome.ordinal());
+        }
+
+        /**
+         * @return the count of every outcome, including those that did not occur.
+         */
+        public Map<Outcome, Long> getOutcomes() {
+            final Map<Outcome, Long> outcomes = new EnumMap<Outcome, Long>(Outcome.class);
+            for (Outcome current : Outcome.values()) {
+                outcomes.put(current, mOutcomes.get(current.ordinal()));
+            }
+            return outcomes;
+        }
+    }
+
+}
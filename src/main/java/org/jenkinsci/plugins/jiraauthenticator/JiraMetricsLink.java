@@ -0,0 +1,73 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.util.Collections;
+import java.util.List;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import hudson.security.SecurityRealm;
+import jenkins.model.Jenkins;
+
+/**
+ * Page under "Manage Jenkins" that shows the {@link JiraMetrics}.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+@Extension
+public class JiraMetricsLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return "monitor.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Jira Authentication Metrics";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Latency, outcomes, cache statistics and the slowest recent calls to Jira.";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "jira-metrics";
+    }
+
+    public JiraMetrics getMetrics() {
+        return JiraMetrics.get();
+    }
+
+    public JiraMetrics.Outcome[] getOutcomes() {
+        return JiraMetrics.Outcome.values();
+    }
+
+    public JiraTrace.Phase[] getPhases() {
+        return JiraTrace.Phase.values();
+    }
+
+    /**
+     * @return the slowest of the recently sampled calls, the slowest first.
+     */
+    public List<JiraTrace> getTraces() {
+        final Jenkins jenkins = Jenkins.getInstance();
+        final SecurityRealm securityRealm = jenkins != null ? jenkins.getSecurityRealm() : null;
+        if (!(securityRealm instanceof JiraSecurityRealm)) {
+            return Collections.emptyList();
+        }
+        return ((JiraSecurityRealm) securityRealm).getTracer().getSlowest();
+    }
+
+    /**
+     * @param pMillis
+     *            a duration.
+     * @return the duration with one decimal.
+     */
+    public String format(double pMillis) {
+        return String.format("%.1f", pMillis);
+    }
+
+}
@@ -0,0 +1,37 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link JiraMetrics}, registered as
+ * <code>org.jenkinsci.plugins.jiraauthenticator:type=JiraMetrics</code>. Durations are in milliseconds.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+public interface JiraMetricsMXBean {
+
+    long getAuthenticateCount();
+
+    double getAuthenticateP99Millis();
+
+    long getLoadUserCount();
+
+    double getLoadUserP99Millis();
+
+    long getHttpCallCount();
+
+    double getHttpCallP99Millis();
+
+    long getHttpTimeouts();
+
+    /**
+     * @return the number of calls by <code>operation.OUTCOME</code>, i.E. <code>authenticate.UNAUTHORIZED</code>.
+     */
+    Map<String, Long> getOutcomes();
+
+    /**
+     * @return the statistics of the caches, the circuit breaker, the bulkhead and the warm-up of the active realm.
+     */
+    Map<String, String> getStatistics();
+}
@@ -1,24 +1,38 @@
 package org.jenkinsci.plugins.jiraauthenticator;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.GeneralSecurityException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.acegisecurity.AuthenticationException;
 import org.acegisecurity.AuthenticationServiceException;
-import org.acegisecurity.GrantedAuthority;
-import org.acegisecurity.GrantedAuthorityImpl;
+import org.acegisecurity.BadCredentialsException;
 import org.acegisecurity.userdetails.UserDetails;
 import org.acegisecurity.userdetails.UsernameNotFoundException;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
-import org.jenkinsci.plugins.jiraauthenticator.beans.Item;
-import org.jenkinsci.plugins.jiraauthenticator.beans.JiraResponseGeneral;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.Stapler;
+import org.kohsuke.stapler.StaplerRequest;
 import org.springframework.dao.DataAccessException;
 
 import com.cloudbees.plugins.credentials.CredentialsMatchers;
@@ -27,8 +41,11 @@ import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import com.cloudbees.plugins.credentials.domains.DomainRequirement;
 import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+import com.google.common.util.concurrent.ListenableFuture;
 
 import hudson.Extension;
+import hudson.Util;
+import hudson.model.Computer;
 import hudson.model.Descriptor;
 import hudson.security.ACL;
 import hudson.security.AbstractPasswordBasedSecurityRealm;
@@ -36,6 +53,7 @@ import hudson.security.GroupDetails;
 import hudson.security.SecurityRealm;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
+import hudson.util.Secret;
 import jenkins.model.Jenkins;
 
 /**
@@ -50,10 +68,76 @@ public class JiraSecurityRealm extends AbstractPasswordBasedSecurityRealm {
     /** Used for logging purposes. */
     private static final Logger LOG = Logger.getLogger(JiraSecurityRealm.class.getName());
 
+    /** The Jira nodes and their pools that are shared by all calls. Only one realm is active, so one set is kept. */
+    private static JiraEndpoints sharedEndpoints;
+
+    /** The TLS setup of the shared endpoints, rebuilt only if the TLS settings change. */
+    private static JiraTlsContext sharedTls;
+
+    /** Runs the continuations of asynchronous calls on virtual threads, <code>null</code> until first used. */
+    private static ExecutorService sharedVirtualExecutor;
+
     private String url;
     private String credentialsId;
     private Integer timeout;
+    private Integer connectTimeout;
     private boolean insecureConnection;
+    private String trustStore;
+    private Secret trustStorePassword;
+    private String pinnedCertificates;
+    private Integer maxConnections;
+    private Integer idleConnectionTimeout;
+    private Integer userCacheTtl;
+    private Integer userCacheNotFoundTtl;
+    private Integer userCacheSize;
+    private Integer userCacheGracePeriod;
+    private Integer credentialCacheTtl;
+    private Integer warmUpInterval;
+    private Integer circuitBreakerFailureRate;
+    private Integer circuitBreakerSlowCallThreshold;
+    private Integer circuitBreakerSlowCallRate;
+    private Integer circuitBreakerOpenDuration;
+    private Integer maxConcurrentRequests;
+    private Integer requestQueueSize;
+    private Integer requestQueueTimeout;
+    private Integer snapshotInterval;
+    private Integer snapshotMaxAge;
+    private Secret webhookSecret;
+    private Integer loginThrottleThreshold;
+    private Integer loginThrottleAddressThreshold;
+    private Integer loginThrottleMaxBlock;
+    private boolean virtualThreads;
+    private Integer traceSampling;
+    private Integer slowRequestThreshold;
+    private String sharedCache;
+    private String sharedCacheLocation;
+
+    /** The service using the technical user, <code>null</code> until the first call or after a setting has changed. */
+    private transient volatile JiraAuthenticationService service;
+
+    /** Cache of the users loaded from Jira, <code>null</code> until the first call or if caching is disabled. */
+    private transient volatile JiraUserCache userCache;
+
+    /** The cache shared with other controllers, <code>null</code> until the first call or if sharing is disabled. */
+    private transient volatile JiraSharedCache.Store sharedStore;
+
+    /** The circuit breaker around all calls to Jira, <code>null</code> until the first call. */
+    private transient volatile JiraCircuitBreaker circuitBreaker;
+
+    /** Limits the concurrent calls to Jira, <code>null</code> until the first call. */
+    private transient volatile JiraBulkhead bulkhead;
+
+    /** Index of the Jira groups, <code>null</code> until the first call. */
+    private transient volatile JiraGroupIndex groupIndex;
+
+    /** Cache of successful password verifications, <code>null</code> until the first call or if caching is disabled. */
+    private transient volatile JiraCredentialCache credentialCache;
+
+    /** Throttles failed logins, <code>null</code> until the first call or if throttling is disabled. */
+    private transient volatile JiraLoginThrottle loginThrottle;
+
+    /** Samples the phases of the calls, <code>null</code> until the first call or after a setting has changed. */
+    private transient volatile JiraTracer tracer;
 
     @DataBoundConstructor
     public JiraSecurityRealm(String url, String credentialsId, Integer timeout, boolean insecureConnection) {
@@ -69,22 +153,67 @@ public class JiraSecurityRealm extends AbstractPasswordBasedSecurityRealm {
             LOG.fine("Authenticate user '" + pUsername + "' using password '" + (!StringUtils.isEmpty(pPassword) ? "<available>'" : "<not specified>'"));
         }
 
+        final long start = System.nanoTime();
+        final JiraTracer tracer = getTracer();
+        final JiraTrace trace = tracer.start(JiraMetrics.AUTHENTICATE, pUsername);
+        final JiraCredentialCache cache = StringUtils.isNotEmpty(pPassword) ? getCredentialCache() : null;
+        final JiraLoginThrottle throttle = StringUtils.isNotEmpty(pPassword) ? getLoginThrottle() : null;
+        final String address = throttle != null ? getRemoteAddress() : null;
         try {
-            final UsernamePasswordCredentialsImpl c = getCredentials(getCredentialsId());
-            JiraAuthenticationService service = new JiraAuthenticationService(url, c.getUsername(), c.getPassword(), timeout, insecureConnection);
-            JiraResponseGeneral serviceResponse = service.authenticate(pUsername, pPassword);
+            final String cachedName = cache != null ? cache.verify(pUsername, pPassword) : null;
+            if (cachedName != null) {
+                LOG.fine("verification of user '" + pUsername + "' answered from cache");
+                JiraTrace.markCurrent(JiraTrace.Phase.LOCAL);
+                JiraMetrics.get().record(JiraMetrics.AUTHENTICATE, start, JiraMetrics.Outcome.SUCCESS);
+                return new JiraUser(cachedName, JiraAuthorities.AUTHENTICATED_ONLY);
+            }
+
+            if (throttle != null) {
+                throttle.check(pUsername, pPassword, address);
+            }
+            JiraTrace.markCurrent(JiraTrace.Phase.LOCAL);
+            final JiraAuthenticationService current = getService();
+            JiraIdentity serviceResponse = current.authenticate(pUsername, pPassword);
+            JiraTrace.markCurrent(JiraTrace.Phase.RESUME);
 
-            final List<GrantedAuthority> authorities = new ArrayList<GrantedAuthority>();
-            authorities.add(SecurityRealm.AUTHENTICATED_AUTHORITY);
-            return new JiraUser(serviceResponse.getName(), authorities);
+            if (cache != null) {
+                cache.store(pUsername, pPassword, serviceResponse.getName());
+            }
+            if (throttle != null) {
+                throttle.success(pUsername);
+            }
+            final JiraUser user = new JiraUser(serviceResponse.getName(), JiraAuthorities.AUTHENTICATED_ONLY);
+            JiraTrace.markCurrent(JiraTrace.Phase.AUTHORITIES);
+            JiraMetrics.get().record(JiraMetrics.AUTHENTICATE, start, JiraMetrics.Outcome.SUCCESS);
+            return user;
+        } catch (JiraLoginThrottle.ThrottledException e) {
+            // throttled logins are not counted as failures, otherwise a bot would keep the real user blocked for good.
+            JiraMetrics.get().record(JiraMetrics.AUTHENTICATE, start, e);
+            throw e;
+        } catch (BadCredentialsException e) {
+            JiraMetrics.get().record(JiraMetrics.AUTHENTICATE, start, e);
+            if (cache != null) {
+                cache.invalidate(pUsername);
+            }
+            if (throttle != null) {
+                throttle.failure(pUsername, pPassword, address, JiraMetrics.outcomeOf(e) == JiraMetrics.Outcome.FORBIDDEN);
+            }
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, e.getMessage(), e);
+            }
+            throw e;
         } catch (AuthenticationException e) {
+            JiraMetrics.get().record(JiraMetrics.AUTHENTICATE, start, e);
             if (LOG.isLoggable(Level.FINE)) {
                 LOG.log(Level.FINE, e.getMessage(), e);
             }
             throw e;
         } catch (Exception e) {
+            JiraMetrics.get().record(JiraMetrics.AUTHENTICATE, start, e);
             LOG.log(Level.WARNING, e.getMessage(), e);
             throw new AuthenticationServiceException("general error: " + e.getMessage(), e);
+        } finally {
+            tracer.finish(trace, JiraMetrics.AUTHENTICATE, pUsername, start);
         }
     }
 
@@ -99,19 +228,161 @@ public class JiraSecurityRealm extends AbstractPasswordBasedSecurityRealm {
             throw new UsernameNotFoundException("not supported");
         }
 
+        final long start = System.nanoTime();
+        final JiraTracer tracer = getTracer();
+        final JiraTrace trace = tracer.start(JiraMetrics.LOAD_USER, pUsername);
         try {
-            final UsernamePasswordCredentialsImpl c = getCredentials(getCredentialsId());
-            JiraAuthenticationService service = new JiraAuthenticationService(url, c.getUsername(), c.getPassword(), timeout, insecureConnection);
-            JiraResponseGeneral serviceResponse = service.loadUserByUsername(pUsername);
+            final JiraUserCache cache = getUserCache();
+            final JiraUser user = cache != null ? cache.get(pUsername) : loadUserFromJira(pUsername);
+            JiraMetrics.get().record(JiraMetrics.LOAD_USER, start, JiraMetrics.Outcome.SUCCESS);
+            return user;
+        } catch (AuthenticationException e) {
+            JiraMetrics.get().record(JiraMetrics.LOAD_USER, start, e);
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, e.getMessage(), e);
+            }
+            throw e;
+        } catch (Exception e) {
+            JiraMetrics.get().record(JiraMetrics.LOAD_USER, start, e);
+            LOG.log(Level.WARNING, e.getMessage(), e);
+            throw new AuthenticationServiceException("general error: " + e.getMessage(), e);
+        } finally {
+            tracer.finish(trace, JiraMetrics.LOAD_USER, pUsername, start);
+        }
+    }
+
+    /**
+     * Loads many users at once, i.E. for reports or migrations that would otherwise call
+     * {@link #loadUserByUsername(String)} for one user after the other. Cached users are served from the cache, the
+     * others are loaded from Jira with up to half of the {@link #getMaxConcurrentRequests()} lookups at the same time,
+     * so logins still get through, and are put into the cache together.
+     * 
+     * @param pUsernames
+     *            the users to load.
+     * @return the users that exist in Jira by their username, in the order of the usernames. Users that do not exist or
+     *         could not be loaded are missing.
+     * @throws AuthenticationException
+     *             if Jira could not be asked for any of the users.
+     */
+    public Map<String, UserDetails> loadUsersByUsername(Collection<String> pUsernames) throws AuthenticationException {
+        final long start = System.nanoTime();
+        final Map<String, UserDetails> users = new LinkedHashMap<String, UserDetails>();
+        final JiraUserCache cache = getUserCache();
+        final List<String> missing = new ArrayList<String>();
+        for (String current : pUsernames) {
+            final JiraUser cached = cache != null ? cache.getIfPresent(current) : null;
+            if (cached != null) {
+                users.put(current, cached);
+            } else {
+                missing.add(current);
+            }
+        }
+        if (missing.isEmpty()) {
+            JiraMetrics.get().record(JiraMetrics.LOAD_USERS, start, JiraMetrics.Outcome.SUCCESS);
+            return users;
+        }
 
-            final List<GrantedAuthority> authorities = new ArrayList<GrantedAuthority>();
-            authorities.add(SecurityRealm.AUTHENTICATED_AUTHORITY);
+        final long mark = cache != null ? cache.getInvalidationMark() : 0;
+        final Map<String, ListenableFuture<JiraIdentity>> pending;
+        try {
+            pending = getService().loadUsersByUsernameAsync(missing, Math.max(getMaxConcurrentRequests() / 2, 1), getCallbackExecutor());
+        } catch (GeneralSecurityException e) {
+            JiraMetrics.get().record(JiraMetrics.LOAD_USERS, start, e);
+            throw new AuthenticationServiceException("general error: " + e.getMessage(), e);
+        }
 
-            for (Item current : serviceResponse.getGroups().getItems()) {
-                authorities.add(new GrantedAuthorityImpl(current.getName()));
+        final Map<String, JiraUser> loaded = new HashMap<String, JiraUser>();
+        AuthenticationException failure = null;
+        int failures = 0;
+        for (Map.Entry<String, ListenableFuture<JiraIdentity>> current : pending.entrySet()) {
+            try {
+                final JiraIdentity identity = JiraAuthenticationService.await(current.getValue());
+                final JiraUser user = new JiraUser(identity.getName(), JiraAuthorities.forGroups(identity.getGroups()), identity.getVersion());
+                loaded.put(current.getKey(), user);
+                users.put(current.getKey(), user);
+            } catch (UsernameNotFoundException e) {
+                LOG.log(Level.FINE, "user {0} does not exist in Jira", current.getKey());
+            } catch (AuthenticationException e) {
+                failures++;
+                failure = failure != null ? failure : e;
             }
+        }
+        if (cache != null) {
+            cache.putAll(loaded, mark);
+        }
+
+        if (failure != null && failures == pending.size()) {
+            JiraMetrics.get().record(JiraMetrics.LOAD_USERS, start, failure);
+            throw failure;
+        } else if (failure != null) {
+            LOG.log(Level.WARNING, "{0} of {1} users could not be loaded from Jira: {2}", new Object[] {failures, pending.size(), failure.getMessage()});
+        }
+        JiraMetrics.get().record(JiraMetrics.LOAD_USERS, start, JiraMetrics.Outcome.SUCCESS);
+        return users;
+    }
+
+    /**
+     * Retrieves the user and its groups from Jira, bypassing the cache.
+     * 
+     * @param pUsername
+     *            the user to load.
+     * @return the user with its authorities.
+     * @throws AuthenticationException
+     *             if the user does not exist or Jira could not be asked.
+     */
+    JiraUser loadUserFromJira(String pUsername) throws AuthenticationException {
+        return loadUserFromJira(pUsername, null);
+    }
+
+    /**
+     * Retrieves the user and its groups from Jira, bypassing the cache. If a previous version is given, the request is
+     * conditional and the previous instance is returned if the user has not changed.
+     * 
+     * @param pUsername
+     *            the user to load.
+     * @param pPrevious
+     *            the cached version of the user or <code>null</code>.
+     * @return the user with its authorities.
+     * @throws AuthenticationException
+     *             if the user does not exist or Jira could not be asked.
+     */
+    JiraUser loadUserFromJira(String pUsername, JiraUser pPrevious) throws AuthenticationException {
+        try {
+            JiraTrace.markCurrent(JiraTrace.Phase.LOCAL);
+            final JiraAuthenticationService current = getService();
+            JiraIdentity serviceResponse = current.loadUserByUsername(pUsername, pPrevious);
+            JiraTrace.markCurrent(JiraTrace.Phase.RESUME);
+
+            if (serviceResponse.isUnchanged()) {
+                return StringUtils.equals(serviceResponse.getVersion(), pPrevious.getVersion()) ? pPrevious
+                        : new JiraUser(pPrevious.getUsername(), pPrevious.getAuthoritySet(), serviceResponse.getVersion());
+            }
+            final JiraUser user = new JiraUser(serviceResponse.getName(), JiraAuthorities.forGroups(serviceResponse.getGroups()), serviceResponse.getVersion());
+            JiraTrace.markCurrent(JiraTrace.Phase.AUTHORITIES);
+            return user;
+        } catch (AuthenticationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new AuthenticationServiceException("general error: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public GroupDetails loadGroupByGroupname(String groupname) throws UsernameNotFoundException, DataAccessException {
+        return loadGroupByGroupname(groupname, false);
+    }
+
+    @Override
+    public GroupDetails loadGroupByGroupname(String groupname, boolean fetchMembers) throws UsernameNotFoundException, DataAccessException {
+        LOG.fine("loadGroupByGroupname '" + groupname);
 
-            return new JiraUser(serviceResponse.getName(), authorities);
+        try {
+            // most callers only check that the group exists, its members are only loaded if they are asked for.
+            if (!fetchMembers) {
+                getGroupIndex().checkExists(groupname);
+                return new JiraGroupDetails(groupname, null);
+            }
+            return new JiraGroupDetails(groupname, getGroupIndex().getMembers(groupname));
         } catch (AuthenticationException e) {
             if (LOG.isLoggable(Level.FINE)) {
                 LOG.log(Level.FINE, e.getMessage(), e);
@@ -123,10 +394,410 @@ public class JiraSecurityRealm extends AbstractPasswordBasedSecurityRealm {
         }
     }
 
-    @Override
-    public GroupDetails loadGroupByGroupname(String groupname) throws UsernameNotFoundException, DataAccessException {
-        LOG.fine("loadGroupByGroupname '" + groupname);
-        return null;
+    /**
+     * Retrieves all members of a group from Jira, bypassing the index.
+     * 
+     * @param pGroupname
+     *            the group to load.
+     * @return the usernames of the members.
+     * @throws AuthenticationException
+     *             if the group does not exist or Jira could not be asked.
+     */
+    Set<String> loadGroupMembersFromJira(String pGroupname) throws AuthenticationException {
+        try {
+            final JiraAuthenticationService service = getService();
+            final Set<String> members = new HashSet<String>();
+            final JiraAuthenticationService.MemberVisitor visitor = new JiraAuthenticationService.MemberVisitor() {
+                @Override
+                public void member(String pGroup, String pUsername) {
+                    members.add(pUsername);
+                }
+            };
+
+            int startAt = 0;
+            while (service.loadGroupMembers(pGroupname, startAt, JiraWarmUp.PAGE_SIZE, visitor)) {
+                startAt += JiraWarmUp.PAGE_SIZE;
+            }
+            return members;
+        } catch (AuthenticationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new AuthenticationServiceException("general error: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Checks that a group exists in Jira with a single page of one member, bypassing the index.
+     * 
+     * @param pGroupname
+     *            the group to check.
+     * @throws AuthenticationException
+     *             if the group does not exist or Jira could not be asked.
+     */
+    void checkGroupInJira(String pGroupname) throws AuthenticationException {
+        try {
+            getService().loadGroupMembers(pGroupname, 0, 1, new JiraAuthenticationService.MemberVisitor() {
+                @Override
+                public void member(String pGroup, String pUsername) {
+                    // only the answer of Jira counts.
+                }
+            });
+        } catch (AuthenticationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new AuthenticationServiceException("general error: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the service that is used for all calls. The credentials of the technical user are resolved once, the
+     * service is rebuilt after the settings or the credentials have changed.
+     * 
+     * @return the service.
+     * @throws GeneralSecurityException
+     *             if the TLS setup fails.
+     * @throws AuthenticationServiceException
+     *             if the credentials of the technical user do not exist.
+     */
+    JiraAuthenticationService getService() throws GeneralSecurityException {
+        JiraAuthenticationService current = service;
+        if (current == null) {
+            synchronized (this) {
+                current = service;
+                if (current == null) {
+                    final UsernamePasswordCredentialsImpl c = getCredentials(getCredentialsId());
+                    if (c == null) {
+                        throw new AuthenticationServiceException("credentials of the technical user not found: " + getCredentialsId());
+                    }
+                    JiraTrace.markCurrent(JiraTrace.Phase.CREDENTIALS);
+                    final JiraEndpoints endpoints = getEndpoints();
+                    JiraTrace.markCurrent(JiraTrace.Phase.SSL_SETUP);
+                    current = new JiraAuthenticationService(endpoints, c.getUsername(), c.getPassword(), getCircuitBreaker(), getBulkhead());
+                    service = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Returns the circuit breaker around all calls to Jira. It is created on first use with the configured settings.
+     * 
+     * @return the circuit breaker.
+     */
+    JiraCircuitBreaker getCircuitBreaker() {
+        JiraCircuitBreaker breaker = circuitBreaker;
+        if (breaker == null) {
+            synchronized (this) {
+                breaker = circuitBreaker;
+                if (breaker == null) {
+                    breaker = new JiraCircuitBreaker(getCircuitBreakerFailureRate(), getCircuitBreakerSlowCallThreshold(), getCircuitBreakerSlowCallRate(),
+                            getCircuitBreakerOpenDuration());
+                    circuitBreaker = breaker;
+                }
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * Returns the bulkhead that limits the concurrent calls to Jira. It is created on first use with the configured
+     * settings.
+     * 
+     * @return the bulkhead.
+     */
+    JiraBulkhead getBulkhead() {
+        JiraBulkhead current = bulkhead;
+        if (current == null) {
+            synchronized (this) {
+                current = bulkhead;
+                if (current == null) {
+                    current = new JiraBulkhead(getMaxConcurrentRequests(), getRequestQueueSize(), getRequestQueueTimeout());
+                    bulkhead = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Drops the users and groups that Jira has reported as changed through the {@link JiraWebhook}. They are loaded
+     * from Jira again on the next call, everything else stays cached.
+     * 
+     * @param pUsername
+     *            the changed or deleted user or <code>null</code>.
+     * @param pGroupname
+     *            the changed or deleted group or <code>null</code>. Together with a user it is a membership change.
+     */
+    void onJiraEvent(String pUsername, String pGroupname) {
+        final JiraUserCache cache = userCache;
+        final JiraGroupIndex index = groupIndex;
+        if (pUsername != null) {
+            if (cache != null) {
+                cache.invalidate(pUsername);
+            }
+            final JiraCredentialCache credentials = credentialCache;
+            if (credentials != null) {
+                credentials.invalidate(pUsername);
+            }
+            if (index != null && pGroupname == null) {
+                index.invalidateMember(pUsername);
+            }
+        }
+        if (pGroupname != null && index != null) {
+            final Set<String> members = index.getIndexedMembers(pGroupname);
+            index.invalidate(pGroupname);
+            // a created, renamed or deleted group changes the authorities of all of its members.
+            if (pUsername == null && members != null && cache != null) {
+                for (String member : members) {
+                    cache.invalidate(member);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the users that other controllers have invalidated in the {@link JiraSharedCache}, called by the
+     * {@link JiraSharedCacheSync}. They are only dropped locally, the shared cache already knows.
+     */
+    void syncSharedCache() {
+        final JiraUserCache cache = userCache;
+        if (cache == null) {
+            return;
+        }
+        final JiraCredentialCache credentials = credentialCache;
+        final JiraGroupIndex index = groupIndex;
+        for (String current : cache.syncShared()) {
+            if (credentials != null) {
+                credentials.invalidate(current);
+            }
+            if (index != null) {
+                index.invalidateMember(current);
+            }
+        }
+    }
+
+    /**
+     * Drops the service, so that the credentials of the technical user are resolved again on the next call.
+     */
+    void invalidateService() {
+        service = null;
+    }
+
+    /**
+     * Returns the pooled connections to the Jira nodes. The connections are kept across all calls and are only rebuilt
+     * if the URLs, the TLS settings or the pool settings have changed.
+     * 
+     * @return the shared endpoints.
+     * @throws GeneralSecurityException
+     *             if the TLS setup fails.
+     */
+    JiraEndpoints getEndpoints() throws GeneralSecurityException {
+        synchronized (JiraSecurityRealm.class) {
+            final JiraTlsContext tls = getTlsContext();
+            if (sharedEndpoints == null || !sharedEndpoints.matches(url, timeout, connectTimeout, tls, maxConnections, idleConnectionTimeout, virtualThreads)) {
+                if (sharedEndpoints != null) {
+                    sharedEndpoints.close();
+                }
+                sharedEndpoints = JiraEndpoints.open(url, timeout, connectTimeout, tls, maxConnections, idleConnectionTimeout, virtualThreads);
+            }
+            return sharedEndpoints;
+        }
+    }
+
+    /**
+     * Returns the TLS setup of the connections. It is built once and shared by all nodes, so the trust material is
+     * resolved once and TLS sessions are resumed across connections.
+     * 
+     * @return the shared TLS setup.
+     * @throws GeneralSecurityException
+     *             if the trust store can not be read or a pinned certificate is invalid.
+     */
+    JiraTlsContext getTlsContext() throws GeneralSecurityException {
+        synchronized (JiraSecurityRealm.class) {
+            if (sharedTls == null || !sharedTls.matches(insecureConnection, trustStore, trustStorePassword, pinnedCertificates)) {
+                sharedTls = new JiraTlsContext(insecureConnection, trustStore, trustStorePassword, pinnedCertificates);
+            }
+            return sharedTls;
+        }
+    }
+
+    /**
+     * Returns the executor that sends follow-up calls once a call has been answered, i.E. the next page of a group.
+     * 
+     * @return a virtual thread per task if enabled and supported, otherwise the remoting pool of Jenkins.
+     */
+    Executor getCallbackExecutor() {
+        if (!virtualThreads || !JiraThreads.isVirtualSupported()) {
+            return Computer.threadPoolForRemoting;
+        }
+        synchronized (JiraSecurityRealm.class) {
+            if (sharedVirtualExecutor == null) {
+                sharedVirtualExecutor = JiraThreads.newExecutor("Jira callback", 1, true);
+            }
+            return sharedVirtualExecutor;
+        }
+    }
+
+    /**
+     * Returns the cache of the users loaded from Jira. It is created on first use with the configured settings.
+     * 
+     * @return the cache or <code>null</code> if caching is disabled by a TTL of 0.
+     */
+    JiraUserCache getUserCache() {
+        JiraUserCache cache = userCache;
+        if (cache == null && getUserCacheTtl() > 0) {
+            synchronized (this) {
+                cache = userCache;
+                if (cache == null) {
+                    cache = new JiraUserCache(getUserCacheTtl(), getUserCacheNotFoundTtl(), getUserCacheSize(), getUserCacheGracePeriod(), virtualThreads,
+                            new JiraUserCache.Loader() {
+                                @Override
+                                public JiraUser load(String pUsername, JiraUser pPrevious) {
+                                    return loadUserFromJira(pUsername, pPrevious);
+                                }
+                            }, getSharedStore());
+                    if (getSnapshotInterval() > 0) {
+                        JiraSnapshot.restore(getSnapshotFile(), cache, getGroupIndex(), getSnapshotMaxAge());
+                    }
+                    userCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Opens the configured {@link JiraSharedCache} on first use.
+     * 
+     * @return the store or <code>null</code> if sharing is disabled or the shared cache can not be opened.
+     */
+    JiraSharedCache.Store getSharedStore() {
+        JiraSharedCache.Store store = sharedStore;
+        if (store == null && StringUtils.isNotEmpty(sharedCache)) {
+            synchronized (this) {
+                store = sharedStore;
+                if (store == null) {
+                    final JiraSharedCache implementation = JiraSharedCache.byId(sharedCache);
+                    if (implementation == null) {
+                        LOG.log(Level.WARNING, "shared cache {0} is not installed, the users are cached locally only", sharedCache);
+                        return null;
+                    }
+                    try {
+                        store = implementation.open(sharedCacheLocation);
+                        sharedStore = store;
+                    } catch (IOException e) {
+                        LOG.log(Level.WARNING, "unable to open the shared cache, the users are cached locally only", e);
+                    }
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * @return the file the {@link JiraSnapshot} is kept in.
+     */
+    File getSnapshotFile() {
+        return new File(Jenkins.getInstance().getRootDir(), JiraSnapshot.FILE_NAME);
+    }
+
+    /**
+     * Returns the index of the Jira groups. It is created on first use, indexed groups are loaded again after the TTL
+     * of the user cache.
+     * 
+     * @return the index.
+     */
+    JiraGroupIndex getGroupIndex() {
+        JiraGroupIndex index = groupIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = groupIndex;
+                if (index == null) {
+                    index = new JiraGroupIndex(getUserCacheTtl(), getUserCacheNotFoundTtl(), getUserCacheGracePeriod(), new JiraGroupIndex.Loader() {
+                        @Override
+                        public Set<String> load(String pGroupname) {
+                            return loadGroupMembersFromJira(pGroupname);
+                        }
+
+                        @Override
+                        public void checkExists(String pGroupname) {
+                            checkGroupInJira(pGroupname);
+                        }
+                    });
+                    groupIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the cache of successful password verifications. It is created on first use with the configured settings.
+     * 
+     * @return the cache or <code>null</code> if caching is disabled, which is the default.
+     */
+    JiraCredentialCache getCredentialCache() {
+        JiraCredentialCache cache = credentialCache;
+        if (cache == null && getCredentialCacheTtl() > 0) {
+            synchronized (this) {
+                cache = credentialCache;
+                if (cache == null) {
+                    cache = new JiraCredentialCache(getCredentialCacheTtl(), getUserCacheSize());
+                    credentialCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Returns the throttle of failed logins. It is created on first use with the configured settings.
+     * 
+     * @return the throttle or <code>null</code> if throttling is disabled by a threshold of 0.
+     */
+    JiraLoginThrottle getLoginThrottle() {
+        JiraLoginThrottle throttle = loginThrottle;
+        if (throttle == null && getLoginThrottleThreshold() > 0) {
+            synchronized (this) {
+                throttle = loginThrottle;
+                if (throttle == null) {
+                    throttle = new JiraLoginThrottle(getLoginThrottleThreshold(), getLoginThrottleAddressThreshold(), getLoginThrottleMaxBlock());
+                    loginThrottle = throttle;
+                }
+            }
+        }
+        return throttle;
+    }
+
+    /**
+     * Returns the tracer of the calls. It is created on first use with the configured settings.
+     * 
+     * @return the tracer.
+     */
+    JiraTracer getTracer() {
+        JiraTracer current = tracer;
+        if (current == null) {
+            synchronized (this) {
+                current = tracer;
+                if (current == null) {
+                    current = new JiraTracer(getTraceSampling(), getSlowRequestThreshold());
+                    tracer = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * The address the login comes from. Headers like <code>X-Forwarded-For</code> are not trusted, behind a reverse
+     * proxy this is the address of the proxy.
+     * 
+     * @return the address or <code>null</code> if the login is not part of a HTTP request.
+     */
+    private static String getRemoteAddress() {
+        final StaplerRequest request = Stapler.getCurrentRequest();
+        return request != null ? request.getRemoteAddr() : null;
     }
 
     /**
@@ -146,10 +817,17 @@ public class JiraSecurityRealm extends AbstractPasswordBasedSecurityRealm {
         }
 
         public FormValidation doCheckUrl(@QueryParameter final String url) {
-            if (StringUtils.isEmpty(url)) {
+            if (StringUtils.isBlank(url)) {
                 return FormValidation.error("The URL of Jira must not be null.");
             }
 
+            for (String current : JiraEndpoints.parseUrls(url)) {
+                try {
+                    new URL(current);
+                } catch (MalformedURLException e) {
+                    return FormValidation.error("Not a valid URL: " + current);
+                }
+            }
             return FormValidation.ok();
         }
 
@@ -177,6 +855,230 @@ public class JiraSecurityRealm extends AbstractPasswordBasedSecurityRealm {
             return FormValidation.ok();
         }
 
+        public FormValidation doCheckConnectTimeout(@QueryParameter final String connectTimeout) {
+            if (StringUtils.isEmpty(connectTimeout)) {
+                return FormValidation.ok();
+            }
+
+            return FormValidation.validatePositiveInteger(connectTimeout);
+        }
+
+        public FormValidation doCheckMaxConnections(@QueryParameter final String maxConnections) {
+            if (StringUtils.isEmpty(maxConnections)) {
+                return FormValidation.ok();
+            }
+
+            return FormValidation.validatePositiveInteger(maxConnections);
+        }
+
+        public FormValidation doCheckIdleConnectionTimeout(@QueryParameter final String idleConnectionTimeout) {
+            if (StringUtils.isEmpty(idleConnectionTimeout)) {
+                return FormValidation.ok();
+            }
+
+            return FormValidation.validatePositiveInteger(idleConnectionTimeout);
+        }
+
+        public FormValidation doCheckUserCacheTtl(@QueryParameter final String userCacheTtl) {
+            if (StringUtils.isEmpty(userCacheTtl)) {
+                return FormValidation.ok();
+            }
+
+            return FormValidation.validateNonNegativeInteger(userCacheTtl);
+        }
+
+        public FormValidation doCheckUserCacheNotFoundTtl(@QueryParameter final String userCacheNotFoundTtl) {
+            if (StringUtils.isEmpty(userCacheNotFoundTtl)) {
+                return FormValidation.ok();
+            }
+
+            return FormValidation.validateNonNegativeInteger(userCacheNotFoundTtl);
+        }
+
+        public FormValidation doCheckUserCacheSize(@QueryParameter final String userCacheSize) {
+            if (StringUtils.isEmpty(userCacheSize)) {
+                return FormValidation.ok();
+            }
+
+            return FormValidation.validatePositiveInteger(userCacheSize);
+        }
+
+        public FormValidation doCheckUserCacheGracePeriod(@QueryParameter final String userCacheGracePeriod) {
+            if (StringUtils.isEmpty(userCacheGracePeriod)) {
+                return FormValidation.ok();
+            }
+
+            return FormValidation.validateNonNegativeInteger(userCacheGracePeriod);
+        }
+
+        public FormValidation doCheckCredentialCacheTtl(@QueryParameter final String credentialCacheTtl) {
+            if (StringUtils.isEmpty(credentialCacheTtl)) {
+                return FormValidation.ok();
+            }
+
+            return FormValidation.validateNonNegativeInteger(credentialCacheTtl);
+        }
+
+        public FormValidation doCheckLoginThrottleThreshold(@QueryParameter final String loginThrottleThreshold) {
+            if (StringUtils.isEmpty(loginThrottleThreshold)) {
+                return FormValidation.ok();
+            }
+
+            return FormValidation.validateNonNegativeInteger(loginThrottleThreshold);
+        }
+
+        public FormValidation doCheckLoginThrottleAddressThreshold(@QueryParameter final String loginThrottleAddressThreshold) {
+            if (StringUtils.isEmpty(loginThrottleAddressThreshold)) {
+                return FormValidation.ok();
+            }
+
+            return FormValidation.validateNonNegativeInteger(loginThrottleAddressThreshold);
+        }
+
+        public FormValidation doCheckLoginThrottleMaxBlock(@QueryParameter final String loginThrottleMaxBlock) {
+            if (StringUtils.isEmpty(loginThrottleMaxBlock)) {
+                return FormValidation.ok();
+            }
+
+            return FormValidation.validatePositiveInteger(loginThrottleMaxBlock);
+        }
+
+        public FormValidation doCheckTrustStore(@QueryParameter final String trustStore) {
+            if (StringUtils.isBlank(trustStore)) {
+                return FormValidation.ok();
+            }
+            Jenkins.getInstance().checkPermission(jenkins.model.Jenkins.ADMINISTER);
+
+            return new File(trustStore.trim()).isFile() ? FormValidation.ok() : FormValidation.error("File not found: " + trustStore);
+        }
+
+        public FormValidation doCheckPinnedCertificates(@QueryParameter final String pinnedCertificates) {
+            try {
+                JiraTlsContext.parsePins(pinnedCertificates);
+                return FormValidation.ok();
+            } catch (GeneralSecurityException e) {
+                return FormValidation.error(e.getMessage());
+            }
+        }
+
+        public FormValidation doCheckTraceSampling(@QueryParameter final String traceSampling) {
+            if (StringUtils.isEmpty(traceSampling)) {
+                return FormValidation.ok();
+            }
+
+            return FormValidation.validateNonNegativeInteger(traceSampling);
+        }
+
+        public FormValidation doCheckSlowRequestThreshold(@QueryParameter final String slowRequestThreshold) {
+            if (StringUtils.isEmpty(slowRequestThreshold)) {
+                return FormValidation.ok();
+            }
+
+            return FormValidation.validateNonNegativeInteger(slowRequestThreshold);
+        }
+
+        public ListBoxModel doFillSharedCacheItems() {
+            final ListBoxModel items = new ListBoxModel();
+            items.add("None", "");
+            for (JiraSharedCache current : JiraSharedCache.all()) {
+                items.add(current.getDisplayName(), current.getId());
+            }
+            return items;
+        }
+
+        public FormValidation doCheckSharedCacheLocation(@QueryParameter final String sharedCache, @QueryParameter final String sharedCacheLocation) {
+            if (StringUtils.isEmpty(sharedCache)) {
+                return FormValidation.ok();
+            }
+
+            final JiraSharedCache implementation = JiraSharedCache.byId(sharedCache);
+            return implementation != null ? implementation.checkLocation(sharedCacheLocation) : FormValidation.error("Not installed: " + sharedCache);
+        }
+
+        public FormValidation doCheckWarmUpInterval(@QueryParameter final String warmUpInterval) {
+            if (StringUtils.isEmpty(warmUpInterval)) {
+                return FormValidation.ok();
+            }
+
+            return FormValidation.validateNonNegativeInteger(warmUpInterval);
+        }
+
+        public FormValidation doCheckCircuitBreakerFailureRate(@QueryParameter final String circuitBreakerFailureRate) {
+            return validatePercentage(circuitBreakerFailureRate);
+        }
+
+        public FormValidation doCheckCircuitBreakerSlowCallThreshold(@QueryParameter final String circuitBreakerSlowCallThreshold) {
+            if (StringUtils.isEmpty(circuitBreakerSlowCallThreshold)) {
+                return FormValidation.ok();
+            }
+
+            return FormValidation.validateNonNegativeInteger(circuitBreakerSlowCallThreshold);
+        }
+
+        public FormValidation doCheckCircuitBreakerSlowCallRate(@QueryParameter final String circuitBreakerSlowCallRate) {
+            return validatePercentage(circuitBreakerSlowCallRate);
+        }
+
+        public FormValidation doCheckCircuitBreakerOpenDuration(@QueryParameter final String circuitBreakerOpenDuration) {
+            if (StringUtils.isEmpty(circuitBreakerOpenDuration)) {
+                return FormValidation.ok();
+            }
+
+            return FormValidation.validatePositiveInteger(circuitBreakerOpenDuration);
+        }
+
+        private FormValidation validatePercentage(final String value) {
+            if (StringUtils.isEmpty(value)) {
+                return FormValidation.ok();
+            }
+
+            final FormValidation validation = FormValidation.validateNonNegativeInteger(value);
+            if (validation.kind == FormValidation.Kind.OK && Integer.parseInt(value) > 100) {
+                return FormValidation.error("The value must be a percentage between 0 and 100.");
+            }
+            return validation;
+        }
+
+        public FormValidation doCheckMaxConcurrentRequests(@QueryParameter final String maxConcurrentRequests) {
+            if (StringUtils.isEmpty(maxConcurrentRequests)) {
+                return FormValidation.ok();
+            }
+
+            return FormValidation.validatePositiveInteger(maxConcurrentRequests);
+        }
+
+        public FormValidation doCheckRequestQueueSize(@QueryParameter final String requestQueueSize) {
+            if (StringUtils.isEmpty(requestQueueSize)) {
+                return FormValidation.ok();
+            }
+
+            return FormValidation.validateNonNegativeInteger(requestQueueSize);
+        }
+
+        public FormValidation doCheckRequestQueueTimeout(@QueryParameter final String requestQueueTimeout) {
+            if (StringUtils.isEmpty(requestQueueTimeout)) {
+                return FormValidation.ok();
+            }
+
+            return FormValidation.validateNonNegativeInteger(requestQueueTimeout);
+        }
+
+        public FormValidation doCheckSnapshotInterval(@QueryParameter final String snapshotInterval) {
+            if (StringUtils.isEmpty(snapshotInterval)) {
+                return FormValidation.ok();
+            }
+
+            return FormValidation.validateNonNegativeInteger(snapshotInterval);
+        }
+
+        public FormValidation doCheckSnapshotMaxAge(@QueryParameter final String snapshotMaxAge) {
+            if (StringUtils.isEmpty(snapshotMaxAge)) {
+                return FormValidation.ok();
+            }
+
+            return FormValidation.validateNonNegativeInteger(snapshotMaxAge);
+        }
+
         public ListBoxModel doFillCredentialsIdItems(@AncestorInPath hudson.model.Item instance) {
             Jenkins.getInstance().checkPermission(jenkins.model.Jenkins.ADMINISTER);
             return new StandardListBoxModel().includeEmptyValue().includeMatchingAs(ACL.SYSTEM, instance, StandardUsernamePasswordCredentials.class,
@@ -184,18 +1086,53 @@ public class JiraSecurityRealm extends AbstractPasswordBasedSecurityRealm {
         }
 
         public FormValidation doTestConnection(@QueryParameter String url, @QueryParameter final String credentialsId, @QueryParameter final Integer timeout,
-                @QueryParameter final boolean insecureConnection) {
+                @QueryParameter final Integer connectTimeout, @QueryParameter final boolean insecureConnection, @QueryParameter final String trustStore,
+                @QueryParameter final String trustStorePassword, @QueryParameter final String pinnedCertificates) {
             Jenkins.getInstance().checkPermission(jenkins.model.Jenkins.ADMINISTER);
 
             final UsernamePasswordCredentialsImpl c = getCredentials(credentialsId);
-            JiraAuthenticationService service = new JiraAuthenticationService(url, c.getUsername(), c.getPassword(), timeout, insecureConnection);
+            if (c == null) {
+                return FormValidation.error("Failed to Authenticate your user: credentials not found");
+            }
+
+            // every node is probed, so that a broken node is noticed before it is needed for a failover.
+            final StringBuilder report = new StringBuilder();
+            int failures = 0;
+            final List<String> urls = JiraEndpoints.parseUrls(url);
+            final JiraTlsContext tls;
             try {
-                service.authenticate(c.getUsername(), c.getPassword().getPlainText());
-                return FormValidation.ok("Connection successful");
-            } catch (Exception e) {
-                LOG.log(Level.WARNING, "validating technical user for jira auth failed", e);
-                return FormValidation.error("Failed to Authenticate your user: " + e.getMessage());
+                tls = new JiraTlsContext(insecureConnection, trustStore, Secret.fromString(trustStorePassword), pinnedCertificates);
+            } catch (GeneralSecurityException e) {
+                return FormValidation.error("Invalid TLS settings: " + e.getMessage());
+            }
+            for (String current : urls) {
+                JiraConnection connection = null;
+                final long start = System.nanoTime();
+                try {
+                    // a throw-away connection, so that the shared pool is not replaced by unsaved settings.
+                    connection = new JiraConnection(current, timeout, connectTimeout, tls, 1, null, false);
+                    JiraAuthenticationService service = new JiraAuthenticationService(connection, c.getUsername(), c.getPassword());
+                    service.authenticate(c.getUsername(), c.getPassword().getPlainText());
+                    report.append(Util.escape(current)).append(": Connection successful in ")
+                            .append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).append("ms<br/>");
+                } catch (Exception e) {
+                    LOG.log(Level.WARNING, "validating technical user for jira auth failed on " + current, e);
+                    report.append(Util.escape(current)).append(": Failed to Authenticate your user: ").append(Util.escape(String.valueOf(e.getMessage())))
+                            .append("<br/>");
+                    failures++;
+                } finally {
+                    if (connection != null) {
+                        connection.close();
+                    }
+                }
+            }
+
+            if (failures == 0) {
+                return FormValidation.okWithMarkup(report.toString());
+            } else if (failures < urls.size()) {
+                return FormValidation.warningWithMarkup(report.toString());
             }
+            return FormValidation.errorWithMarkup(report.toString());
         }
 
         /**
@@ -226,29 +1163,368 @@ public class JiraSecurityRealm extends AbstractPasswordBasedSecurityRealm {
     public Integer getTimeout() {
         return timeout;
     }
+
+    public Integer getConnectTimeout() {
+        return connectTimeout;
+    }
     
     public boolean isInsecureConnection() {
         return insecureConnection;
     }
 
+    /**
+     * @return TRUE if the calls to Jira wait on virtual threads, which is only used on a JVM that supports them.
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public String getTrustStore() {
+        return trustStore;
+    }
+
+    public Secret getTrustStorePassword() {
+        return trustStorePassword;
+    }
+
+    public String getPinnedCertificates() {
+        return pinnedCertificates;
+    }
+
+    public Integer getMaxConnections() {
+        return maxConnections;
+    }
+
+    public Integer getIdleConnectionTimeout() {
+        return idleConnectionTimeout;
+    }
+
+    public int getUserCacheTtl() {
+        return userCacheTtl == null || userCacheTtl < 0 ? JiraUserCache.DEFAULT_TTL : userCacheTtl;
+    }
+
+    public int getUserCacheNotFoundTtl() {
+        return userCacheNotFoundTtl == null || userCacheNotFoundTtl < 0 ? JiraUserCache.DEFAULT_NOT_FOUND_TTL : userCacheNotFoundTtl;
+    }
+
+    public int getUserCacheSize() {
+        return userCacheSize == null || userCacheSize <= 0 ? JiraUserCache.DEFAULT_MAX_ENTRIES : userCacheSize;
+    }
+
+    public int getUserCacheGracePeriod() {
+        return userCacheGracePeriod == null || userCacheGracePeriod < 0 ? JiraUserCache.DEFAULT_GRACE_PERIOD : userCacheGracePeriod;
+    }
+
+    public int getCredentialCacheTtl() {
+        return credentialCacheTtl == null || credentialCacheTtl < 0 ? JiraCredentialCache.DEFAULT_TTL : credentialCacheTtl;
+    }
+
+    public int getLoginThrottleThreshold() {
+        return loginThrottleThreshold == null || loginThrottleThreshold < 0 ? JiraLoginThrottle.DEFAULT_THRESHOLD : loginThrottleThreshold;
+    }
+
+    public int getLoginThrottleAddressThreshold() {
+        return loginThrottleAddressThreshold == null || loginThrottleAddressThreshold < 0 ? JiraLoginThrottle.DEFAULT_ADDRESS_THRESHOLD
+                : loginThrottleAddressThreshold;
+    }
+
+    public int getLoginThrottleMaxBlock() {
+        return loginThrottleMaxBlock == null || loginThrottleMaxBlock <= 0 ? JiraLoginThrottle.DEFAULT_MAX_BLOCK : loginThrottleMaxBlock;
+    }
+
+    public int getTraceSampling() {
+        return traceSampling == null || traceSampling < 0 ? JiraTracer.DEFAULT_SAMPLING : traceSampling;
+    }
+
+    public int getSlowRequestThreshold() {
+        return slowRequestThreshold == null || slowRequestThreshold < 0 ? JiraTracer.DEFAULT_SLOW_THRESHOLD : slowRequestThreshold;
+    }
+
+    public int getCircuitBreakerFailureRate() {
+        return circuitBreakerFailureRate == null || circuitBreakerFailureRate < 0 ? JiraCircuitBreaker.DEFAULT_FAILURE_RATE : circuitBreakerFailureRate;
+    }
+
+    public int getCircuitBreakerSlowCallThreshold() {
+        return circuitBreakerSlowCallThreshold == null || circuitBreakerSlowCallThreshold < 0 ? JiraCircuitBreaker.DEFAULT_SLOW_CALL_THRESHOLD
+                : circuitBreakerSlowCallThreshold;
+    }
+
+    public int getCircuitBreakerSlowCallRate() {
+        return circuitBreakerSlowCallRate == null || circuitBreakerSlowCallRate < 0 ? JiraCircuitBreaker.DEFAULT_SLOW_CALL_RATE : circuitBreakerSlowCallRate;
+    }
+
+    public int getCircuitBreakerOpenDuration() {
+        return circuitBreakerOpenDuration == null || circuitBreakerOpenDuration <= 0 ? JiraCircuitBreaker.DEFAULT_OPEN_DURATION : circuitBreakerOpenDuration;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests == null || maxConcurrentRequests <= 0 ? JiraBulkhead.DEFAULT_MAX_CONCURRENT : maxConcurrentRequests;
+    }
+
+    public int getRequestQueueSize() {
+        return requestQueueSize == null || requestQueueSize < 0 ? JiraBulkhead.DEFAULT_QUEUE_SIZE : requestQueueSize;
+    }
+
+    public int getRequestQueueTimeout() {
+        return requestQueueTimeout == null || requestQueueTimeout < 0 ? JiraBulkhead.DEFAULT_QUEUE_TIMEOUT : requestQueueTimeout;
+    }
+
+    /**
+     * @return minutes between two snapshots of the user cache, 0 if snapshots are disabled.
+     */
+    public int getSnapshotInterval() {
+        return snapshotInterval == null || snapshotInterval < 0 ? JiraSnapshot.DEFAULT_INTERVAL : snapshotInterval;
+    }
+
+    /**
+     * @return minutes a snapshot is served while Jira can not be reached.
+     */
+    public int getSnapshotMaxAge() {
+        return snapshotMaxAge == null || snapshotMaxAge < 0 ? JiraSnapshot.DEFAULT_MAX_AGE : snapshotMaxAge;
+    }
+
+    /**
+     * @return the secret the {@link JiraWebhook} is authenticated with, <code>null</code> if the webhook is disabled.
+     */
+    public Secret getWebhookSecret() {
+        return webhookSecret;
+    }
+
+    /**
+     * @return minutes between two warm-ups of the user cache, 0 if the warm-up is disabled.
+     */
+    public int getWarmUpInterval() {
+        return warmUpInterval == null || warmUpInterval < 0 ? 0 : warmUpInterval;
+    }
+
+    /**
+     * @return the id of the {@link JiraSharedCache}, empty if the users are cached locally only.
+     */
+    public String getSharedCache() {
+        return sharedCache;
+    }
+
+    public String getSharedCacheLocation() {
+        return sharedCacheLocation;
+    }
+
     @DataBoundSetter
     public void setCredentialsId(String credentialsId) {
         this.credentialsId = credentialsId;
+        this.service = null;
     }
 
     @DataBoundSetter
     public void setTimeout(Integer timeout) {
         this.timeout = timeout;
+        this.service = null;
+    }
+
+    @DataBoundSetter
+    public void setConnectTimeout(Integer connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.service = null;
     }
 
     @DataBoundSetter
     public void setUrl(String url) {
         this.url = url;
+        this.service = null;
     }
    
     @DataBoundSetter
     public void setInsecureConnection(boolean insecureConnections) {
         this.insecureConnection = insecureConnections;
+        this.service = null;
+    }
+
+    @DataBoundSetter
+    public void setTrustStore(String trustStore) {
+        this.trustStore = trustStore;
+        this.service = null;
+    }
+
+    @DataBoundSetter
+    public void setTrustStorePassword(Secret trustStorePassword) {
+        this.trustStorePassword = trustStorePassword;
+        this.service = null;
+    }
+
+    @DataBoundSetter
+    public void setPinnedCertificates(String pinnedCertificates) {
+        this.pinnedCertificates = pinnedCertificates;
+        this.service = null;
+    }
+
+    @DataBoundSetter
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        this.service = null;
+        this.userCache = null;
+    }
+
+    @DataBoundSetter
+    public void setMaxConnections(Integer maxConnections) {
+        this.maxConnections = maxConnections;
+        this.service = null;
+    }
+
+    @DataBoundSetter
+    public void setIdleConnectionTimeout(Integer idleConnectionTimeout) {
+        this.idleConnectionTimeout = idleConnectionTimeout;
+        this.service = null;
+    }
+
+    @DataBoundSetter
+    public void setUserCacheTtl(Integer userCacheTtl) {
+        this.userCacheTtl = userCacheTtl;
+        this.userCache = null;
+        this.groupIndex = null;
+    }
+
+    @DataBoundSetter
+    public void setUserCacheNotFoundTtl(Integer userCacheNotFoundTtl) {
+        this.userCacheNotFoundTtl = userCacheNotFoundTtl;
+        this.userCache = null;
+        this.groupIndex = null;
+    }
+
+    @DataBoundSetter
+    public void setUserCacheSize(Integer userCacheSize) {
+        this.userCacheSize = userCacheSize;
+        this.userCache = null;
+    }
+
+    @DataBoundSetter
+    public void setUserCacheGracePeriod(Integer userCacheGracePeriod) {
+        this.userCacheGracePeriod = userCacheGracePeriod;
+        this.userCache = null;
+    }
+
+    @DataBoundSetter
+    public void setCredentialCacheTtl(Integer credentialCacheTtl) {
+        this.credentialCacheTtl = credentialCacheTtl;
+        this.credentialCache = null;
+    }
+
+    @DataBoundSetter
+    public void setLoginThrottleThreshold(Integer loginThrottleThreshold) {
+        this.loginThrottleThreshold = loginThrottleThreshold;
+        this.loginThrottle = null;
+    }
+
+    @DataBoundSetter
+    public void setLoginThrottleAddressThreshold(Integer loginThrottleAddressThreshold) {
+        this.loginThrottleAddressThreshold = loginThrottleAddressThreshold;
+        this.loginThrottle = null;
+    }
+
+    @DataBoundSetter
+    public void setLoginThrottleMaxBlock(Integer loginThrottleMaxBlock) {
+        this.loginThrottleMaxBlock = loginThrottleMaxBlock;
+        this.loginThrottle = null;
+    }
+
+    @DataBoundSetter
+    public void setTraceSampling(Integer traceSampling) {
+        this.traceSampling = traceSampling;
+        this.tracer = null;
+    }
+
+    @DataBoundSetter
+    public void setSlowRequestThreshold(Integer slowRequestThreshold) {
+        this.slowRequestThreshold = slowRequestThreshold;
+        this.tracer = null;
+    }
+
+    @DataBoundSetter
+    public void setWarmUpInterval(Integer warmUpInterval) {
+        this.warmUpInterval = warmUpInterval;
+    }
+
+    @DataBoundSetter
+    public void setSharedCache(String sharedCache) {
+        this.sharedCache = Util.fixEmptyAndTrim(sharedCache);
+        resetSharedCache();
+    }
+
+    @DataBoundSetter
+    public void setSharedCacheLocation(String sharedCacheLocation) {
+        this.sharedCacheLocation = Util.fixEmptyAndTrim(sharedCacheLocation);
+        resetSharedCache();
+    }
+
+    @DataBoundSetter
+    public void setCircuitBreakerFailureRate(Integer circuitBreakerFailureRate) {
+        this.circuitBreakerFailureRate = circuitBreakerFailureRate;
+        resetCircuitBreaker();
+    }
+
+    @DataBoundSetter
+    public void setCircuitBreakerSlowCallThreshold(Integer circuitBreakerSlowCallThreshold) {
+        this.circuitBreakerSlowCallThreshold = circuitBreakerSlowCallThreshold;
+        resetCircuitBreaker();
+    }
+
+    @DataBoundSetter
+    public void setCircuitBreakerSlowCallRate(Integer circuitBreakerSlowCallRate) {
+        this.circuitBreakerSlowCallRate = circuitBreakerSlowCallRate;
+        resetCircuitBreaker();
+    }
+
+    @DataBoundSetter
+    public void setCircuitBreakerOpenDuration(Integer circuitBreakerOpenDuration) {
+        this.circuitBreakerOpenDuration = circuitBreakerOpenDuration;
+        resetCircuitBreaker();
+    }
+
+    @DataBoundSetter
+    public void setMaxConcurrentRequests(Integer maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        resetBulkhead();
+    }
+
+    @DataBoundSetter
+    public void setRequestQueueSize(Integer requestQueueSize) {
+        this.requestQueueSize = requestQueueSize;
+        resetBulkhead();
+    }
+
+    @DataBoundSetter
+    public void setRequestQueueTimeout(Integer requestQueueTimeout) {
+        this.requestQueueTimeout = requestQueueTimeout;
+        resetBulkhead();
+    }
+
+    @DataBoundSetter
+    public void setSnapshotInterval(Integer snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    @DataBoundSetter
+    public void setSnapshotMaxAge(Integer snapshotMaxAge) {
+        this.snapshotMaxAge = snapshotMaxAge;
+    }
+
+    @DataBoundSetter
+    public void setWebhookSecret(Secret webhookSecret) {
+        this.webhookSecret = webhookSecret;
+    }
+
+    private void resetBulkhead() {
+        this.bulkhead = null;
+        this.service = null;
+    }
+
+    private void resetSharedCache() {
+        IOUtils.closeQuietly(sharedStore);
+        this.sharedStore = null;
+        this.userCache = null;
+    }
+
+    private void resetCircuitBreaker() {
+        this.circuitBreaker = null;
+        this.service = null;
     }
     
     
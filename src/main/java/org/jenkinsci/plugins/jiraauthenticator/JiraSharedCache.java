@@ -0,0 +1,209 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import hudson.util.FormValidation;
+import jenkins.model.Jenkins;
+
+/**
+ * A cache tier that several Jenkins controllers share behind their own {@link JiraUserCache}. A user that one
+ * controller has loaded from Jira is taken from the shared cache by the others, and a user that one controller drops,
+ * i.E. because of a {@link JiraWebhook} event, is dropped by all of them. The user cache of every controller stays in
+ * front as a near-cache.
+ * <p>
+ * Every entry carries a version, the time its data was loaded from Jira or the time it was dropped. A store only
+ * replaces an entry with a newer version, so a slow load that started before a change can never overwrite the change.
+ * The versions are wall clock times, so the clocks of the controllers must be synchronized.
+ * <p>
+ * Implementations are registered with {@link Extension} and selected in the realm by their {@link #getId()}, see
+ * {@link JiraFileSharedCache} for one that keeps the entries in a shared directory.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+public abstract class JiraSharedCache implements ExtensionPoint {
+
+    /**
+     * @return the id the implementation is selected with in the configuration.
+     */
+    public String getId() {
+        return getClass().getName();
+    }
+
+    /**
+     * @return the name shown in the configuration.
+     */
+    public abstract String getDisplayName();
+
+    /**
+     * Checks the configured location of the shared cache.
+     *
+     * @param pLocation
+     *            the location, i.E. a directory or the URL of a server.
+     * @return the result of the check.
+     */
+    public FormValidation checkLocation(String pLocation) {
+        return FormValidation.ok();
+    }
+
+    /**
+     * Opens the shared cache.
+     *
+     * @param pLocation
+     *            the configured location.
+     * @return the store, it is closed by the realm once the configuration changes.
+     * @throws IOException
+     *             if the shared cache can not be opened.
+     */
+    public abstract Store open(String pLocation) throws IOException;
+
+    /**
+     * @return all registered implementations.
+     */
+    public static ExtensionList<JiraSharedCache> all() {
+        return Jenkins.getInstance().getExtensionList(JiraSharedCache.class);
+    }
+
+    /**
+     * @param pId
+     *            the id of an implementation.
+     * @return the implementation or <code>null</code> if there is none with this id.
+     */
+    static JiraSharedCache byId(String pId) {
+        for (JiraSharedCache current : all()) {
+            if (current.getId().equals(pId)) {
+                return current;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The entries of the shared cache by username. All methods may be called concurrently and block while the shared
+     * cache is accessed.
+     */
+    public interface Store extends Closeable {
+
+        /**
+         * @param pUsername
+         *            the username the user is cached with.
+         * @return the entry or <code>null</code> if there is none.
+         */
+        Entry get(String pUsername) throws IOException;
+
+        /**
+         * Stores the entry unless the shared cache has an entry with the same or a newer version.
+         *
+         * @param pUsername
+         *            the username the user is cached with.
+         * @param pEntry
+         *            the entry.
+         * @return TRUE if the entry has been stored.
+         */
+        boolean put(String pUsername, Entry pEntry) throws IOException;
+
+        /**
+         * Drops a user on all controllers. An invalidated entry with the given version is stored, so loads that started
+         * before can not store their result, and the invalidation is passed to the other controllers.
+         *
+         * @param pUsername
+         *            the username the user is cached with.
+         * @param pVersion
+         *            time of the invalidation in MS.
+         */
+        void invalidate(String pUsername, long pVersion) throws IOException;
+
+        /**
+         * @return the users that have been invalidated since the previous call, including the ones of this
+         *         controller. The first call only starts to track the invalidations.
+         */
+        Collection<String> pollInvalidations() throws IOException;
+    }
+
+    /**
+     * A user in the shared cache, a user that does not exist in Jira or an invalidated user.
+     */
+    public static final class Entry {
+
+        private final String mName;
+        private final List<String> mGroups;
+        private final long mVersion;
+        private final long mExpiresAt;
+        private final boolean mInvalidated;
+
+        private Entry(String pName, List<String> pGroups, long pVersion, long pExpiresAt, boolean pInvalidated) {
+            this.mName = pName;
+            this.mGroups = pGroups;
+            this.mVersion = pVersion;
+            this.mExpiresAt = pExpiresAt;
+            this.mInvalidated = pInvalidated;
+        }
+
+        /**
+         * @param pName
+         *            the name of the user in Jira.
+         * @param pGroups
+         *            the names of its groups.
+         * @param pVersion
+         *            time in MS the user was loaded from Jira.
+         * @param pExpiresAt
+         *            time in MS until the user may be served.
+         */
+        public static Entry found(String pName, List<String> pGroups, long pVersion, long pExpiresAt) {
+            return new Entry(pName, Collections.unmodifiableList(pGroups), pVersion, pExpiresAt, false);
+        }
+
+        /**
+         * @param pVersion
+         *            time in MS Jira reported that the user does not exist.
+         * @param pExpiresAt
+         *            time in MS until this is remembered.
+         */
+        public static Entry notFound(long pVersion, long pExpiresAt) {
+            return new Entry(null, Collections.<String> emptyList(), pVersion, pExpiresAt, false);
+        }
+
+        /**
+         * @param pVersion
+         *            time in MS the user was invalidated.
+         */
+        public static Entry invalidated(long pVersion) {
+            return new Entry(null, Collections.<String> emptyList(), pVersion, pVersion, true);
+        }
+
+        /**
+         * @return the name of the user in Jira or <code>null</code> if it does not exist or is invalidated.
+         */
+        public String getName() {
+            return mName;
+        }
+
+        public List<String> getGroups() {
+            return mGroups;
+        }
+
+        public long getVersion() {
+            return mVersion;
+        }
+
+        public long getExpiresAt() {
+            return mExpiresAt;
+        }
+
+        public boolean isFound() {
+            return mName != null;
+        }
+
+        public boolean isInvalidated() {
+            return mInvalidated;
+        }
+    }
+
+}
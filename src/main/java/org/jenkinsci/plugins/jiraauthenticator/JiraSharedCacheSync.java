@@ -0,0 +1,37 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.util.concurrent.TimeUnit;
+
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+import hudson.security.SecurityRealm;
+import jenkins.model.Jenkins;
+
+/**
+ * Polls the {@link JiraSharedCache} of the {@link JiraSecurityRealm} for users that other controllers have invalidated,
+ * i.E. because Jira has sent them a webhook event, and drops them from the local caches.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+@Extension
+public class JiraSharedCacheSync extends PeriodicWork {
+
+    /** Time in MS between two polls, the delay until an invalidation reaches the other controllers. */
+    private static final long INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
+    @Override
+    public long getRecurrencePeriod() {
+        return INTERVAL;
+    }
+
+    @Override
+    protected void doRun() {
+        final Jenkins jenkins = Jenkins.getInstance();
+        final SecurityRealm securityRealm = jenkins != null ? jenkins.getSecurityRealm() : null;
+        if (securityRealm instanceof JiraSecurityRealm) {
+            ((JiraSecurityRealm) securityRealm).syncSharedCache();
+        }
+    }
+
+}
@@ -0,0 +1,270 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.acegisecurity.GrantedAuthority;
+
+import hudson.security.SecurityRealm;
+
+/**
+ * Snapshot of the cached users and their groups in <code>JENKINS_HOME</code>, so that the user cache and the group
+ * index start warm after a restart and group based authorization keeps working for a while if Jira can not be reached.
+ * <p>
+ * The file is length-prefixed binary: a header, a table of all distinct strings and the users as indices into that
+ * table. It is written to a temporary file and moved into place, so a reader never sees a partial snapshot, and it is
+ * read back with a single NIO read.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+final class JiraSnapshot {
+
+    /** Default minutes between two snapshots, 0 disables them. */
+    static final int DEFAULT_INTERVAL = 15;
+
+    /** Default minutes a snapshot is served while Jira can not be reached. */
+    static final int DEFAULT_MAX_AGE = 1440;
+
+    static final String FILE_NAME = "jira-authenticator-snapshot.bin";
+
+    private static final int MAGIC = 0x4A415553;
+    private static final int VERSION = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final Logger LOG = Logger.getLogger(JiraSnapshot.class.getName());
+
+    private final long mCreatedAt;
+    private final Map<String, JiraUser> mUsers;
+
+    private JiraSnapshot(long pCreatedAt, Map<String, JiraUser> pUsers) {
+        this.mCreatedAt = pCreatedAt;
+        this.mUsers = pUsers;
+    }
+
+    long getCreatedAt() {
+        return mCreatedAt;
+    }
+
+    Map<String, JiraUser> getUsers() {
+        return mUsers;
+    }
+
+    /**
+     * @return the members of every group, derived from the users.
+     */
+    Map<String, Set<String>> getGroups() {
+        final Map<String, Set<String>> groups = new HashMap<String, Set<String>>();
+        for (Map.Entry<String, JiraUser> current : mUsers.entrySet()) {
+            for (GrantedAuthority authority : current.getValue().getAuthorities()) {
+                if (authority == SecurityRealm.AUTHENTICATED_AUTHORITY) {
+                    continue;
+                }
+                Set<String> members = groups.get(authority.getAuthority());
+                if (members == null) {
+                    members = new HashSet<String>();
+                    groups.put(authority.getAuthority(), members);
+                }
+                members.add(current.getKey());
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Writes the users atomically.
+     *
+     * @param pFile
+     *            the snapshot file.
+     * @param pUsers
+     *            the users by the username they are cached with.
+     * @throws IOException
+     *             if the file can not be written, the previous snapshot is kept then.
+     */
+    static void write(File pFile, Map<String, JiraUser> pUsers) throws IOException {
+        final Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        final List<int[]> users = new ArrayList<int[]>(pUsers.size());
+        for (Map.Entry<String, JiraUser> current : pUsers.entrySet()) {
+            final GrantedAuthority[] authorities = current.getValue().getAuthorities();
+            final int[] user = new int[authorities.length + 2];
+            int length = 0;
+            user[length++] = indexOf(strings, current.getKey());
+            user[length++] = indexOf(strings, current.getValue().getUsername());
+            for (GrantedAuthority authority : authorities) {
+                if (authority != SecurityRealm.AUTHENTICATED_AUTHORITY) {
+                    user[length++] = indexOf(strings, authority.getAuthority());
+                }
+            }
+            users.add(length == user.length ? user : Arrays.copyOf(user, length));
+        }
+
+        final File temp = new File(pFile.getParentFile(), pFile.getName() + ".tmp");
+        final FileOutputStream file = new FileOutputStream(temp);
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+
+            out.writeInt(strings.size());
+            for (String current : strings.keySet()) {
+                final byte[] bytes = current.getBytes(UTF8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            out.writeInt(users.size());
+            for (int[] user : users) {
+                out.writeInt(user[0]);
+                out.writeInt(user[1]);
+                out.writeInt(user.length - 2);
+                for (int i = 2; i < user.length; i++) {
+                    out.writeInt(user[i]);
+                }
+            }
+            out.flush();
+            file.getFD().sync();
+        } finally {
+            file.close();
+        }
+
+        try {
+            Files.move(temp.toPath(), pFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), pFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        LOG.log(Level.FINE, "wrote snapshot of {0} users with {1} distinct names to {2}", new Object[] {users.size(), strings.size(), pFile});
+    }
+
+    /**
+     * Reads a snapshot.
+     *
+     * @param pFile
+     *            the snapshot file.
+     * @return the snapshot or <code>null</code> if there is none.
+     * @throws IOException
+     *             if the file can not be read or is corrupt.
+     */
+    static JiraSnapshot read(File pFile) throws IOException {
+        if (!pFile.isFile()) {
+            return null;
+        }
+
+        final ByteBuffer buffer;
+        final FileChannel channel = FileChannel.open(pFile.toPath(), StandardOpenOption.READ);
+        try {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // a file channel fills the buffer in one read, the loop only guards against short reads.
+            }
+            buffer.flip();
+        } finally {
+            channel.close();
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("not a snapshot of this version: " + pFile);
+            }
+            final long createdAt = buffer.getLong();
+
+            final String[] strings = new String[buffer.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                final byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, UTF8);
+            }
+
+            // the authority of every group is looked up once and shared by all users.
+            final GrantedAuthority[] authorities = new GrantedAuthority[strings.length];
+            final int userCount = buffer.getInt();
+            final Map<String, JiraUser> users = new HashMap<String, JiraUser>(userCount * 4 / 3 + 1);
+            for (int i = 0; i < userCount; i++) {
+                final String key = strings[buffer.getInt()];
+                final String name = strings[buffer.getInt()];
+                final int groupCount = buffer.getInt();
+                final List<GrantedAuthority> groups = new ArrayList<GrantedAuthority>(groupCount);
+                for (int j = 0; j < groupCount; j++) {
+                    final int index = buffer.getInt();
+                    if (authorities[index] == null) {
+                        authorities[index] = JiraAuthorities.intern(strings[index]);
+                    }
+                    groups.add(authorities[index]);
+                }
+                users.put(key, new JiraUser(name, JiraAuthorities.forGroups(groups)));
+            }
+            return new JiraSnapshot(createdAt, users);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("snapshot is truncated: " + pFile, e);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("snapshot is corrupt: " + pFile, e);
+        } catch (NegativeArraySizeException e) {
+            throw new IOException("snapshot is corrupt: " + pFile, e);
+        }
+    }
+
+    /**
+     * Fills the cache and the index from the snapshot file, if there is a snapshot that is younger than the max age.
+     *
+     * @param pFile
+     *            the snapshot file.
+     * @param pCache
+     *            the user cache.
+     * @param pIndex
+     *            the group index.
+     * @param pMaxAge
+     *            minutes the snapshot may be served without Jira.
+     */
+    static void restore(File pFile, JiraUserCache pCache, JiraGroupIndex pIndex, int pMaxAge) {
+        try {
+            final JiraSnapshot snapshot = read(pFile);
+            if (snapshot == null) {
+                return;
+            }
+
+            final long servableUntil = snapshot.getCreatedAt() + TimeUnit.MINUTES.toMillis(pMaxAge);
+            if (System.currentTimeMillis() >= servableUntil) {
+                LOG.log(Level.INFO, "ignoring Jira user snapshot {0}, it is older than {1} minutes", new Object[] {pFile, pMaxAge});
+                return;
+            }
+
+            pCache.restore(snapshot.getUsers(), servableUntil);
+            pIndex.restore(snapshot.getGroups(), servableUntil);
+            LOG.log(Level.INFO, "restored {0} users from the Jira user snapshot", snapshot.getUsers().size());
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "unable to read the Jira user snapshot " + pFile, e);
+        }
+    }
+
+    private static int indexOf(Map<String, Integer> pStrings, String pValue) {
+        Integer index = pStrings.get(pValue);
+        if (index == null) {
+            index = pStrings.size();
+            pStrings.put(pValue, index);
+        }
+        return index;
+    }
+
+}
@@ -0,0 +1,60 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+import hudson.security.SecurityRealm;
+import jenkins.model.Jenkins;
+
+/**
+ * Writes the {@link JiraSnapshot} of the user cache of the {@link JiraSecurityRealm} in the configured interval.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+@Extension
+public class JiraSnapshotWriter extends PeriodicWork {
+
+    private static final Logger LOG = Logger.getLogger(JiraSnapshotWriter.class.getName());
+
+    private volatile long mLastWrite = System.currentTimeMillis();
+
+    @Override
+    public long getRecurrencePeriod() {
+        return MIN;
+    }
+
+    @Override
+    protected void doRun() {
+        final Jenkins jenkins = Jenkins.getInstance();
+        final SecurityRealm securityRealm = jenkins != null ? jenkins.getSecurityRealm() : null;
+        if (!(securityRealm instanceof JiraSecurityRealm)) {
+            return;
+        }
+
+        final JiraSecurityRealm realm = (JiraSecurityRealm) securityRealm;
+        final JiraUserCache cache = realm.getUserCache();
+        if (realm.getSnapshotInterval() <= 0 || cache == null
+                || System.currentTimeMillis() < mLastWrite + TimeUnit.MINUTES.toMillis(realm.getSnapshotInterval())) {
+            return;
+        }
+
+        mLastWrite = System.currentTimeMillis();
+        final Map<String, JiraUser> users = cache.getUsers();
+        if (users.isEmpty()) {
+            // an empty cache after a restart must not replace the last good snapshot.
+            return;
+        }
+        try {
+            JiraSnapshot.write(realm.getSnapshotFile(), users);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "unable to write the Jira user snapshot", e);
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * Creates the threads that wait for Jira. If virtual threads are enabled and the JVM supports them (Java 21 or later),
+ * every waiting call gets its own virtual thread instead of holding a platform thread. The plugin is built for Java 7,
+ * so the virtual thread API is called through reflection; on older JVMs the platform threads are used.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+final class JiraThreads {
+
+    private static final Logger LOG = Logger.getLogger(JiraThreads.class.getName());
+
+    /** <code>Thread.Builder</code> methods, <code>null</code> if the JVM has no virtual threads. */
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method FACTORY;
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        Method newThreadPerTaskExecutor = null;
+        try {
+            final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (ClassNotFoundException e) {
+            LOG.log(Level.FINE, "virtual threads are not supported by this JVM");
+        } catch (NoSuchMethodException e) {
+            LOG.log(Level.FINE, "virtual threads are not supported by this JVM");
+        }
+        OF_VIRTUAL = newThreadPerTaskExecutor != null ? ofVirtual : null;
+        NAME = name;
+        FACTORY = factory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+    private JiraThreads() {
+    }
+
+    /**
+     * @return TRUE if the JVM supports virtual threads.
+     */
+    static boolean isVirtualSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @param pName
+     *            prefix of the thread names.
+     * @param pVirtual
+     *            TRUE to create virtual threads if the JVM supports them.
+     * @return a factory of virtual threads or of daemon platform threads.
+     */
+    static ThreadFactory newThreadFactory(String pName, boolean pVirtual) {
+        if (pVirtual && isVirtualSupported()) {
+            try {
+                return (ThreadFactory) FACTORY.invoke(NAME.invoke(OF_VIRTUAL.invoke(null), pName + " ", 0L));
+            } catch (IllegalAccessException e) {
+                LOG.log(Level.WARNING, "unable to create virtual threads, using platform threads", e);
+            } catch (InvocationTargetException e) {
+                LOG.log(Level.WARNING, "unable to create virtual threads, using platform threads", e.getCause());
+            }
+        }
+        return new NamingThreadFactory(new DaemonThreadFactory(), pName);
+    }
+
+    /**
+     * Creates an executor for tasks that wait for Jira.
+     *
+     * @param pName
+     *            prefix of the thread names.
+     * @param pPlatformThreads
+     *            number of threads if platform threads are used.
+     * @param pVirtual
+     *            TRUE to start a virtual thread per task if the JVM supports it.
+     * @return the executor, it must be shut down by the caller.
+     */
+    static ExecutorService newExecutor(String pName, int pPlatformThreads, boolean pVirtual) {
+        if (pVirtual && isVirtualSupported()) {
+            try {
+                return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, newThreadFactory(pName, true));
+            } catch (IllegalAccessException e) {
+                LOG.log(Level.WARNING, "unable to create virtual threads, using platform threads", e);
+            } catch (InvocationTargetException e) {
+                LOG.log(Level.WARNING, "unable to create virtual threads, using platform threads", e.getCause());
+            }
+        }
+        return Executors.newFixedThreadPool(pPlatformThreads, newThreadFactory(pName, false));
+    }
+
+}
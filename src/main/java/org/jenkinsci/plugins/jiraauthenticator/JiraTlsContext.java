@@ -0,0 +1,272 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.ObjectUtils;
+import org.apache.commons.lang.StringUtils;
+
+import hudson.util.Secret;
+
+/**
+ * The TLS setup of all connections to Jira. It is built once per configuration and shared by the connections of all
+ * nodes, so the trust material is resolved once and the TLS sessions of the shared session cache are resumed when a
+ * new connection is opened.
+ * <p>
+ * The server certificate is checked against the trust store of the JVM, against a custom trust store, or against
+ * pinned SHA-256 fingerprints. A pinned certificate is trusted even if it is self-signed; if a trust store is
+ * configured as well, the chain must also be valid for it. Insecure connections trust every certificate and remain
+ * available for compatibility. The hostname is verified in all modes, including pinned and insecure connections.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+public final class JiraTlsContext {
+
+    /** Number of TLS sessions kept for resumption. */
+    static final int SESSION_CACHE_SIZE = 1000;
+
+    /** Seconds a TLS session may be resumed. */
+    static final int SESSION_TIMEOUT = (int) TimeUnit.HOURS.toSeconds(8);
+
+    private static final Logger LOG = Logger.getLogger(JiraTlsContext.class.getName());
+
+    private final boolean mInsecure;
+    private final String mTrustStore;
+    private final Secret mTrustStorePassword;
+    private final String mPinnedCertificates;
+    private final SSLContext mContext;
+    private final AtomicLong mHandshakes = new AtomicLong();
+    private final AtomicLong mResumedHandshakes = new AtomicLong();
+
+    /**
+     * Default constructor.
+     *
+     * @param pInsecure
+     *            TRUE to trust every certificate.
+     * @param pTrustStore
+     *            path of a trust store file or <code>null</code> for the trust store of the JVM.
+     * @param pTrustStorePassword
+     *            password of the trust store or <code>null</code>.
+     * @param pPinnedCertificates
+     *            SHA-256 fingerprints of the trusted certificates, separated by whitespace or commas, or
+     *            <code>null</code>.
+     * @throws GeneralSecurityException
+     *             if the trust store can not be read or a fingerprint is invalid.
+     */
+    public JiraTlsContext(boolean pInsecure, String pTrustStore, Secret pTrustStorePassword, String pPinnedCertificates) throws GeneralSecurityException {
+        this.mInsecure = pInsecure;
+        this.mTrustStore = StringUtils.trimToNull(pTrustStore);
+        this.mTrustStorePassword = pTrustStorePassword;
+        this.mPinnedCertificates = StringUtils.trimToNull(pPinnedCertificates);
+
+        mContext = SSLContext.getInstance("TLS");
+        mContext.init(null, new TrustManager[] {createTrustManager()}, null);
+        final SSLSessionContext sessions = mContext.getClientSessionContext();
+        sessions.setSessionCacheSize(SESSION_CACHE_SIZE);
+        sessions.setSessionTimeout(SESSION_TIMEOUT);
+    }
+
+    /**
+     * Checks whether this context was built with the given settings.
+     *
+     * @return TRUE if nothing has changed.
+     */
+    public boolean matches(boolean pInsecure, String pTrustStore, Secret pTrustStorePassword, String pPinnedCertificates) {
+        return mInsecure == pInsecure && ObjectUtils.equals(mTrustStore, StringUtils.trimToNull(pTrustStore))
+                && ObjectUtils.equals(mPinnedCertificates, StringUtils.trimToNull(pPinnedCertificates))
+                && StringUtils.equals(Secret.toString(mTrustStorePassword), Secret.toString(pTrustStorePassword));
+    }
+
+    public SSLContext getContext() {
+        return mContext;
+    }
+
+    /**
+     * Records a finished handshake. A session that was created before the handshake started has been resumed from the
+     * session cache.
+     *
+     * @param pSession
+     *            the session of the new connection.
+     * @param pStartInMS
+     *            {@link System#currentTimeMillis()} before the handshake.
+     */
+    void onHandshake(SSLSession pSession, long pStartInMS) {
+        mHandshakes.incrementAndGet();
+        if (pSession.getCreationTime() < pStartInMS) {
+            mResumedHandshakes.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return number of TLS handshakes, including the resumed ones.
+     */
+    long getHandshakes() {
+        return mHandshakes.get();
+    }
+
+    /**
+     * @return number of TLS handshakes that resumed a cached session.
+     */
+    long getResumedHandshakes() {
+        return mResumedHandshakes.get();
+    }
+
+    /**
+     * @return number of sessions in the session cache.
+     */
+    int getCachedSessions() {
+        return Collections.list(mContext.getClientSessionContext().getIds()).size();
+    }
+
+    private X509TrustManager createTrustManager() throws GeneralSecurityException {
+        if (mInsecure) {
+            LOG.log(Level.INFO, "connection to Jira services is using an insecure connection");
+            return new X509TrustManager() {
+                public X509Certificate[] getAcceptedIssuers() {
+                    return new X509Certificate[0];
+                }
+
+                public void checkClientTrusted(X509Certificate[] certs, String authType) {
+                }
+
+                public void checkServerTrusted(X509Certificate[] certs, String authType) {
+                }
+            };
+        }
+
+        final Set<String> pins = parsePins(mPinnedCertificates);
+        final X509TrustManager trustStore = mTrustStore != null || pins.isEmpty() ? loadTrustManager() : null;
+        if (pins.isEmpty()) {
+            LOG.log(Level.FINER, "connection to Jira services is secured by trust store {0}", mTrustStore != null ? mTrustStore : "of the JVM");
+            return trustStore;
+        }
+        LOG.log(Level.FINER, "connection to Jira services is secured by {0} pinned certificates", pins.size());
+        return new PinningTrustManager(pins, trustStore);
+    }
+
+    /**
+     * Loads the configured trust store, or the one of the JVM.
+     */
+    private X509TrustManager loadTrustManager() throws GeneralSecurityException {
+        KeyStore keyStore = null;
+        if (mTrustStore != null) {
+            final String name = mTrustStore.toLowerCase(Locale.ENGLISH);
+            keyStore = KeyStore.getInstance(name.endsWith(".p12") || name.endsWith(".pfx") ? "PKCS12" : KeyStore.getDefaultType());
+            final String password = Secret.toString(mTrustStorePassword);
+            InputStream in = null;
+            try {
+                in = new FileInputStream(new File(mTrustStore));
+                keyStore.load(in, StringUtils.isEmpty(password) ? null : password.toCharArray());
+            } catch (IOException e) {
+                throw new KeyStoreException("unable to read the trust store " + mTrustStore + ": " + e.getMessage(), e);
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+        }
+
+        final TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        factory.init(keyStore);
+        for (TrustManager current : factory.getTrustManagers()) {
+            if (current instanceof X509TrustManager) {
+                return (X509TrustManager) current;
+            }
+        }
+        throw new KeyStoreException("no X509 trust manager available");
+    }
+
+    /**
+     * Parses the fingerprints, colons are optional, i.E. <code>AB:CD:...</code> or <code>abcd...</code>.
+     */
+    static Set<String> parsePins(String pPins) throws GeneralSecurityException {
+        final Set<String> pins = new HashSet<String>();
+        if (pPins == null) {
+            return pins;
+        }
+        for (String current : pPins.split("[\\s,]+")) {
+            final String pin = current.replace(":", "").toLowerCase(Locale.ENGLISH);
+            if (pin.isEmpty()) {
+                continue;
+            } else if (!pin.matches("[0-9a-f]{64}")) {
+                throw new KeyStoreException("not a SHA-256 fingerprint: " + current);
+            }
+            pins.add(pin);
+        }
+        return pins;
+    }
+
+    static String fingerprint(X509Certificate pCertificate) throws CertificateException {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(pCertificate.getEncoded());
+            final StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte current : digest) {
+                hex.append(Character.forDigit((current >> 4) & 0xF, 16)).append(Character.forDigit(current & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (GeneralSecurityException e) {
+            throw new CertificateException("unable to compute the fingerprint of " + pCertificate.getSubjectX500Principal(), e);
+        }
+    }
+
+    /**
+     * Trusts a chain if one of its certificates is pinned and, if a trust store is given, the chain is valid for it.
+     */
+    private static final class PinningTrustManager implements X509TrustManager {
+
+        private final Set<String> mPins;
+        private final X509TrustManager mDelegate;
+
+        PinningTrustManager(Set<String> pPins, X509TrustManager pDelegate) {
+            this.mPins = pPins;
+            this.mDelegate = pDelegate;
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] pChain, String pAuthType) throws CertificateException {
+            throw new CertificateException("client certificates are not supported");
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] pChain, String pAuthType) throws CertificateException {
+            if (mDelegate != null) {
+                mDelegate.checkServerTrusted(pChain, pAuthType);
+            }
+            for (X509Certificate current : pChain) {
+                if (mPins.contains(fingerprint(current))) {
+                    return;
+                }
+            }
+            throw new CertificateException("the certificate of Jira is not pinned: " + (pChain.length > 0 ? pChain[0].getSubjectX500Principal() : "none"));
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return mDelegate != null ? mDelegate.getAcceptedIssuers() : new X509Certificate[0];
+        }
+    }
+
+}
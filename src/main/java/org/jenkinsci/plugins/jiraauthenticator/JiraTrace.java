@@ -0,0 +1,195 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The phases of one sampled call, from the realm down to the HTTP call and back. The trace is handed from the calling
+ * thread to the I/O thread and back; each side marks the end of a phase with {@link #markCurrent(Phase)} on the trace
+ * of its thread, which adds the time since the previous mark to that phase. The marks are made one after the other, so
+ * the sum of all phases is the duration of the call.
+ * <p>
+ * A trace is only created for sampled calls, see {@link JiraTracer}. For all other calls {@link #current()} is
+ * <code>null</code> and marking costs a thread local lookup.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+public final class JiraTrace {
+
+    /** Request property that carries the trace to the I/O thread. */
+    static final String PROPERTY = JiraTrace.class.getName();
+
+    private static final ThreadLocal<JiraTrace> CURRENT = new ThreadLocal<JiraTrace>();
+
+    /**
+     * The phases of a call in the order they occur.
+     */
+    public enum Phase {
+        /** Credential cache and login throttle. */
+        LOCAL,
+        /** Resolving the credentials of the technical user, only if the service is rebuilt. */
+        CREDENTIALS,
+        /** Building the connections and their SSL context, only if the settings have changed. */
+        SSL_SETUP,
+        /** Bulkhead and circuit breaker. */
+        ADMISSION,
+        /** Waiting for an I/O thread and for a pooled connection. */
+        QUEUE,
+        /** TCP connect, only if no pooled connection was available. */
+        CONNECT,
+        /** TLS handshake, only if no pooled connection was available. */
+        TLS_HANDSHAKE,
+        /** Sending the request until the response headers have arrived. */
+        WAIT,
+        /** Reading and parsing the response body. */
+        PARSE,
+        /** Until the calling thread continues after the response. */
+        RESUME,
+        /** Building the user and its authorities. */
+        AUTHORITIES
+    }
+
+    private final String mOperation;
+    private final String mUsername;
+    private final long mTimestamp = System.currentTimeMillis();
+    private final long mStart = System.nanoTime();
+    private final long[] mPhases = new long[Phase.values().length];
+    private long mLast = mStart;
+    private long mDuration = -1;
+
+    private volatile String mEndpoint;
+    private volatile long mResponseSize = -1;
+    private volatile JiraMetrics.Outcome mOutcome;
+
+    JiraTrace(String pOperation, String pUsername) {
+        this.mOperation = pOperation;
+        this.mUsername = pUsername;
+    }
+
+    /**
+     * @return the trace of the current thread or <code>null</code> if the call is not sampled.
+     */
+    static JiraTrace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes the trace the one of the current thread, <code>null</code> detaches the current trace.
+     */
+    static void attach(JiraTrace pTrace) {
+        if (pTrace != null) {
+            CURRENT.set(pTrace);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Ends the given phase of the trace of the current thread, if any.
+     */
+    static void markCurrent(Phase pPhase) {
+        final JiraTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.mark(pPhase);
+        }
+    }
+
+    /**
+     * Ends the given phase, it lasted since the previous mark.
+     */
+    void mark(Phase pPhase) {
+        final long now = System.nanoTime();
+        mPhases[pPhase.ordinal()] += now - mLast;
+        mLast = now;
+    }
+
+    void finish() {
+        mDuration = System.nanoTime() - mStart;
+    }
+
+    void setEndpoint(String pEndpoint) {
+        this.mEndpoint = pEndpoint;
+    }
+
+    void setResponseSize(long pResponseSize) {
+        this.mResponseSize = pResponseSize;
+    }
+
+    void setOutcome(JiraMetrics.Outcome pOutcome) {
+        this.mOutcome = pOutcome;
+    }
+
+    public String getOperation() {
+        return mOperation;
+    }
+
+    public String getUsername() {
+        return mUsername;
+    }
+
+    public Date getTimestamp() {
+        return new Date(mTimestamp);
+    }
+
+    /**
+     * @return the Jira node that answered or <code>null</code> if Jira was not called.
+     */
+    public String getEndpoint() {
+        return mEndpoint;
+    }
+
+    /**
+     * @return bytes of the response body or -1 if no body was read.
+     */
+    public long getResponseSize() {
+        return mResponseSize;
+    }
+
+    /**
+     * @return the outcome of the HTTP call or <code>null</code> if Jira was not called.
+     */
+    public JiraMetrics.Outcome getOutcome() {
+        return mOutcome;
+    }
+
+    long getDuration() {
+        return mDuration;
+    }
+
+    public double getDurationMillis() {
+        return mDuration / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getPhaseMillis(Phase pPhase) {
+        return mPhases[pPhase.ordinal()] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return the duration of every phase in milliseconds.
+     */
+    public Map<Phase, Double> getPhases() {
+        final Map<Phase, Double> phases = new EnumMap<Phase, Double>(Phase.class);
+        for (Phase current : Phase.values()) {
+            phases.put(current, getPhaseMillis(current));
+        }
+        return phases;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(mOperation).append(" of user ").append(mUsername).append(" took ").append(String.format("%.1f", getDurationMillis())).append("ms");
+        if (mEndpoint != null) {
+            builder.append(" via ").append(mEndpoint).append(", outcome ").append(mOutcome).append(", response ").append(mResponseSize).append(" bytes");
+        }
+        builder.append(" [");
+        for (Phase current : Phase.values()) {
+            builder.append(current == Phase.LOCAL ? "" : ", ").append(current).append('=').append(String.format("%.1f", getPhaseMillis(current)));
+        }
+        return builder.append(']').toString();
+    }
+
+}
@@ -0,0 +1,144 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Samples every n-th call of the realm with a {@link JiraTrace} and keeps the recent traces in a ring buffer, so the
+ * slowest of them can be shown with their phases on the {@link JiraMetricsLink} page. Calls that take longer than the
+ * threshold are logged, with their phases if they were sampled. Response bodies are never logged.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+class JiraTracer {
+
+    /** Default: every 10th call is traced, 0 disables tracing. */
+    static final int DEFAULT_SAMPLING = 10;
+
+    /** Default threshold in milliseconds above which a call is logged, 0 disables the log. */
+    static final int DEFAULT_SLOW_THRESHOLD = 5000;
+
+    /** Number of recent traces that are kept, a power of two. */
+    private static final int RING_SIZE = 256;
+
+    /** Number of traces shown on the metrics page. */
+    private static final int SLOWEST = 20;
+
+    private static final Logger LOG = Logger.getLogger(JiraTracer.class.getName());
+
+    private final int mSampling;
+    private final long mSlowThresholdInNS;
+    private final AtomicLong mCalls = new AtomicLong();
+    private final AtomicLong mNext = new AtomicLong();
+    private final AtomicLong mSlowCalls = new AtomicLong();
+    private final AtomicReferenceArray<JiraTrace> mRecent = new AtomicReferenceArray<JiraTrace>(RING_SIZE);
+
+    /**
+     * Default constructor.
+     *
+     * @param pSampling
+     *            trace every n-th call, 0 to trace none.
+     * @param pSlowThreshold
+     *            milliseconds above which a call is logged, 0 to log none.
+     */
+    JiraTracer(int pSampling, int pSlowThreshold) {
+        this.mSampling = pSampling;
+        this.mSlowThresholdInNS = TimeUnit.MILLISECONDS.toNanos(pSlowThreshold);
+    }
+
+    /**
+     * Starts a call. If it is sampled, its trace becomes the trace of the current thread.
+     *
+     * @param pOperation
+     *            name of the operation, i.E. {@link JiraMetrics#AUTHENTICATE}.
+     * @param pUsername
+     *            the user of the call.
+     * @return the trace or <code>null</code> if the call is not sampled.
+     */
+    JiraTrace start(String pOperation, String pUsername) {
+        if (mSampling <= 0 || mCalls.getAndIncrement() % mSampling != 0) {
+            JiraTrace.attach(null);
+            return null;
+        }
+        final JiraTrace trace = new JiraTrace(pOperation, pUsername);
+        JiraTrace.attach(trace);
+        return trace;
+    }
+
+    /**
+     * Finishes a call, it is logged if it took longer than the threshold.
+     *
+     * @param pTrace
+     *            the trace returned by {@link #start(String, String)} or <code>null</code>.
+     * @param pOperation
+     *            name of the operation.
+     * @param pUsername
+     *            the user of the call.
+     * @param pStartInNS
+     *            {@link System#nanoTime()} at the start of the call.
+     */
+    void finish(JiraTrace pTrace, String pOperation, String pUsername, long pStartInNS) {
+        JiraTrace.attach(null);
+        final long duration;
+        if (pTrace != null) {
+            pTrace.finish();
+            mRecent.set((int) (mNext.getAndIncrement() & (RING_SIZE - 1)), pTrace);
+            duration = pTrace.getDuration();
+        } else {
+            duration = System.nanoTime() - pStartInNS;
+        }
+
+        if (mSlowThresholdInNS > 0 && duration >= mSlowThresholdInNS) {
+            mSlowCalls.incrementAndGet();
+            if (pTrace != null) {
+                LOG.log(Level.WARNING, "slow call to Jira: {0}", pTrace);
+            } else {
+                LOG.log(Level.WARNING, "slow call to Jira: {0} of user {1} took {2}ms, not sampled", new Object[] {pOperation, pUsername,
+                        TimeUnit.NANOSECONDS.toMillis(duration)});
+            }
+        }
+    }
+
+    /**
+     * @return the slowest of the recent traces, the slowest first.
+     */
+    List<JiraTrace> getSlowest() {
+        final List<JiraTrace> traces = new ArrayList<JiraTrace>(RING_SIZE);
+        for (int i = 0; i < RING_SIZE; i++) {
+            final JiraTrace current = mRecent.get(i);
+            if (current != null) {
+                traces.add(current);
+            }
+        }
+        Collections.sort(traces, new Comparator<JiraTrace>() {
+            @Override
+            public int compare(JiraTrace pFirst, JiraTrace pSecond) {
+                return Long.compare(pSecond.getDuration(), pFirst.getDuration());
+            }
+        });
+        return traces.size() > SLOWEST ? new ArrayList<JiraTrace>(traces.subList(0, SLOWEST)) : traces;
+    }
+
+    /**
+     * @return number of calls that have been traced.
+     */
+    long getSampledCalls() {
+        return mNext.get();
+    }
+
+    /**
+     * @return number of calls that took longer than the threshold.
+     */
+    long getSlowCalls() {
+        return mSlowCalls.get();
+    }
+
+}
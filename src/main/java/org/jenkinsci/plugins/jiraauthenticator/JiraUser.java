@@ -15,26 +15,65 @@ import hudson.util.Secret;
  */
 public class JiraUser implements UserDetails {
 
-    private static final long serialVersionUID = 485415736315753530L;
+    /** Changed with the shared authority set, users serialized before can not be read and have to log in again. */
+    private static final long serialVersionUID = 6263183707471512398L;
 
     String user;
     Secret password;
-    List<GrantedAuthority> grantedAuthorities;
+    JiraAuthoritySet grantedAuthorities;
+    String version;
 
-    public JiraUser(String user, Secret password, List<GrantedAuthority> grantedAuthorities) {
+    public JiraUser(String user, Secret password, JiraAuthoritySet grantedAuthorities) {
         super();
         this.user = user;
         this.password = password;
         this.grantedAuthorities = grantedAuthorities;
     }
 
+    /**
+     * @param user
+     *            the username.
+     * @param grantedAuthorities
+     *            the shared authorities.
+     * @param version
+     *            the entity tag Jira sent with the user or <code>null</code>.
+     */
+    JiraUser(String user, JiraAuthoritySet grantedAuthorities, String version) {
+        this(user, null, grantedAuthorities);
+        this.version = version;
+    }
+
+    public JiraUser(String user, JiraAuthoritySet grantedAuthorities) {
+        this(user, null, grantedAuthorities);
+    }
+
+    public JiraUser(String user, Secret password, List<GrantedAuthority> grantedAuthorities) {
+        this(user, password, JiraAuthorities.setOf(grantedAuthorities));
+    }
+
     public JiraUser(String user, List<GrantedAuthority> grantedAuthorities) {
         this(user, null, grantedAuthorities);
     }
 
+    /**
+     * Returns the shared array of the authorities. Users with the same groups share the array, it must not be
+     * modified.
+     */
     @Override
     public GrantedAuthority[] getAuthorities() {
-        return grantedAuthorities.toArray(new GrantedAuthority[this.grantedAuthorities.size()]);
+        return grantedAuthorities.toArray();
+    }
+
+    public JiraAuthoritySet getAuthoritySet() {
+        return grantedAuthorities;
+    }
+
+    /**
+     * @return the entity tag Jira sent with the user or <code>null</code>. It is sent back when the user is refreshed,
+     *         so Jira can answer with 304 Not Modified.
+     */
+    public String getVersion() {
+        return version;
     }
 
     @Override
@@ -0,0 +1,731 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.acegisecurity.AuthenticationException;
+import org.acegisecurity.AuthenticationServiceException;
+import org.acegisecurity.GrantedAuthority;
+import org.acegisecurity.userdetails.UsernameNotFoundException;
+
+import hudson.security.SecurityRealm;
+
+/**
+ * In-memory cache of the users and their groups loaded from Jira. Entries expire after a TTL, users that do not exist
+ * are remembered for a separate, shorter TTL and the least recently used entries are evicted once the cache is full.
+ * Concurrent misses for the same user are collapsed into one call to Jira.
+ * <p>
+ * Lookups read a {@link ConcurrentHashMap} without a lock, every entry only remembers the time of its last use. Only
+ * writes share one lock. Once the cache is full, the least recently used tenth of the entries is evicted at once, so the
+ * eviction is only approximately LRU and the cache holds between 90% and 100% of its maximum size.
+ * <p>
+ * Entries that are close to expiry are refreshed in the background while the cached user is still served. An expired
+ * user is loaded from Jira again, the last known user is only served for a grace period after its expiry if Jira can
+ * not be asked.
+ * <p>
+ * A load that was already running when its user was invalidated, i.E. by a {@link JiraWebhook} event, may have read
+ * the groups before the change. Its result is passed to the waiting callers but it is not cached.
+ * <p>
+ * Jira matches usernames without regard to case, so the users are cached by their {@link #key(String)}. A user that
+ * logs in as <code>Bob</code> is dropped as well when Jira reports a change of <code>bob</code>.
+ * <p>
+ * With a {@link JiraSharedCache} this cache is the near-cache of the controller. A miss asks the shared cache before
+ * Jira, a user loaded from Jira is published to it with the time the load started as its version, and an invalidated
+ * user is dropped on all controllers. A shared entry ages from the time it was loaded from Jira, so it is not served
+ * longer than one that was loaded by this controller.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+class JiraUserCache {
+
+    /** Default time in seconds a loaded user is cached. */
+    static final int DEFAULT_TTL = 300;
+
+    /** Default time in seconds a user that does not exist in Jira is remembered. */
+    static final int DEFAULT_NOT_FOUND_TTL = 30;
+
+    /** Default maximum number of cached users. */
+    static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    /** Default time in seconds an expired user is still served if Jira can not be asked. */
+    static final int DEFAULT_GRACE_PERIOD = 600;
+
+    /** An entry is refreshed in the background once this share of its TTL has passed. */
+    private static final double REFRESH_AHEAD_RATIO = 0.8;
+
+    /** Number of threads refreshing entries in the background. */
+    private static final int REFRESH_THREADS = 2;
+
+    /** Number of refreshes that may wait for a thread. Further refreshes are skipped. */
+    private static final int REFRESH_QUEUE_SIZE = 1000;
+
+    /** Share of the maximum size that is evicted at once when the cache is full. */
+    private static final int EVICTION_DIVISOR = 10;
+
+    /** The last use of an entry is only updated if it is older than this, so hot entries are not written on every hit. */
+    private static final long ACCESS_RESOLUTION_MS = 1000;
+
+    /** Number of invalidated users that are remembered, beyond that an invalidation counts for all users. */
+    private static final int MAX_INVALIDATED = 10000;
+
+    private static final Logger LOG = Logger.getLogger(JiraUserCache.class.getName());
+
+    /**
+     * Loads a user from Jira on a cache miss or a refresh.
+     */
+    interface Loader {
+
+        /**
+         * @param pUsername
+         *            the user to load.
+         * @param pPrevious
+         *            the cached user, including an expired one, or <code>null</code>.
+         * @return the user with its authorities, the previous instance if nothing has changed.
+         * @throws UsernameNotFoundException
+         *             if the user does not exist in Jira.
+         * @throws AuthenticationException
+         *             if Jira could not be asked.
+         */
+        JiraUser load(String pUsername, JiraUser pPrevious) throws AuthenticationException;
+    }
+
+    private final long mTtlInMS;
+    private final long mNotFoundTtlInMS;
+    private final long mGracePeriodInMS;
+    private final Loader mLoader;
+    private final JiraSharedCache.Store mShared;
+    private final int mMaxEntries;
+    private final ConcurrentMap<String, Entry> mEntries = new ConcurrentHashMap<String, Entry>();
+
+    /** Guards all writes of the entries and the invalidations, lookups do not take it. */
+    private final Object mWriteLock = new Object();
+    private final RequestCoalescer<String, Entry> mLoads = new RequestCoalescer<String, Entry>();
+
+    private final ThreadPoolExecutor mRefreshExecutor;
+    private final Set<String> mRefreshing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicLong mRefreshFailures = new AtomicLong();
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mStaleHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mEvictions = new AtomicLong();
+    private final AtomicLong mLoadFailures = new AtomicLong();
+    private final AtomicLong mUnchangedLoads = new AtomicLong();
+    private final AtomicLong mSharedHits = new AtomicLong();
+    private final AtomicLong mSharedFailures = new AtomicLong();
+
+    /** Counts the invalidations. A load that started before an invalidation of its user is not cached. */
+    private final AtomicLong mInvalidations = new AtomicLong();
+    private final Map<String, Long> mInvalidatedAt = new HashMap<String, Long>();
+    private long mAllInvalidatedAt;
+    private final JiraLatencyHistogram mLoadTimes = new JiraLatencyHistogram();
+    private volatile String mLastRefreshFailure;
+
+    /**
+     * Default constructor.
+     *
+     * @param pTtl
+     *            seconds a user is cached.
+     * @param pNotFoundTtl
+     *            seconds a not existing user is remembered.
+     * @param pMaxEntries
+     *            maximum number of cached users.
+     * @param pGracePeriod
+     *            seconds an expired user is served if Jira can not be asked.
+     * @param pVirtualThreads
+     *            TRUE to refresh on virtual threads if the JVM supports them.
+     * @param pLoader
+     *            loads the users on a miss.
+     * @param pShared
+     *            the cache shared with other controllers or <code>null</code>.
+     */
+    JiraUserCache(int pTtl, int pNotFoundTtl, int pMaxEntries, int pGracePeriod, boolean pVirtualThreads, Loader pLoader,
+            JiraSharedCache.Store pShared) {
+        this.mTtlInMS = TimeUnit.SECONDS.toMillis(pTtl);
+        this.mNotFoundTtlInMS = TimeUnit.SECONDS.toMillis(pNotFoundTtl);
+        this.mGracePeriodInMS = TimeUnit.SECONDS.toMillis(pGracePeriod);
+        this.mMaxEntries = pMaxEntries;
+        this.mLoader = pLoader;
+        this.mShared = pShared;
+        this.mRefreshExecutor = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(REFRESH_QUEUE_SIZE), JiraThreads.newThreadFactory("JiraUserCache refresh", pVirtualThreads));
+        this.mRefreshExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the cached user or loads it from Jira. An expired user is only served if loading it fails.
+     *
+     * @param pUsername
+     *            the user to load.
+     * @return the user with its authorities.
+     * @throws UsernameNotFoundException
+     *             if the user does not exist in Jira.
+     * @throws AuthenticationException
+     *             if Jira could not be asked.
+     */
+    JiraUser get(String pUsername) throws AuthenticationException {
+        final String key = key(pUsername);
+        final long now = System.currentTimeMillis();
+        final Entry cached = lookup(key, now);
+        if (cached != null && !cached.isExpired(now)) {
+            if (cached.isRefreshDue(now)) {
+                refreshAsync(key);
+            }
+            mHits.incrementAndGet();
+            return cached.resolve(pUsername);
+        }
+
+        mMisses.incrementAndGet();
+        try {
+            return mLoads.execute(key, new Callable<Entry>() {
+                @Override
+                public Entry call() {
+                    return load(key);
+                }
+            }).resolve(pUsername);
+        } catch (AuthenticationServiceException e) {
+            // the last known user is only served if Jira can not be asked, never instead of asking it.
+            if (cached == null || !cached.isServable(System.currentTimeMillis())) {
+                throw e;
+            }
+            mStaleHits.incrementAndGet();
+            LOG.log(Level.WARNING, "loading user {0} failed, serving the cached groups: {1}", new Object[] {pUsername, e.getMessage()});
+            return cached.mUser;
+        }
+    }
+
+    /**
+     * Returns the cached user without asking Jira.
+     *
+     * @param pUsername
+     *            the user.
+     * @return the user if it is cached and has not expired, otherwise <code>null</code>.
+     */
+    JiraUser getIfPresent(String pUsername) {
+        final long now = System.currentTimeMillis();
+        final Entry cached = lookup(key(pUsername), now);
+        if (cached == null || cached.mUser == null || cached.isExpired(now)) {
+            return null;
+        }
+        mHits.incrementAndGet();
+        return cached.mUser;
+    }
+
+    /**
+     * @return number of background refreshes that failed since the cache was created.
+     */
+    long getRefreshFailures() {
+        return mRefreshFailures.get();
+    }
+
+    /**
+     * @return the message of the last failed background refresh or <code>null</code>.
+     */
+    String getLastRefreshFailure() {
+        return mLastRefreshFailure;
+    }
+
+    /**
+     * @return number of lookups answered with a fresh entry.
+     */
+    long getHits() {
+        return mHits.get();
+    }
+
+    /**
+     * @return number of lookups answered with an expired entry within the grace period because Jira could not be asked.
+     */
+    long getStaleHits() {
+        return mStaleHits.get();
+    }
+
+    /**
+     * @return number of lookups that had to wait for Jira.
+     */
+    long getMisses() {
+        return mMisses.get();
+    }
+
+    /**
+     * @return number of entries removed because the cache was full.
+     */
+    long getEvictions() {
+        return mEvictions.get();
+    }
+
+    /**
+     * @return number of loads from Jira that failed, including background refreshes.
+     */
+    long getLoadFailures() {
+        return mLoadFailures.get();
+    }
+
+    /**
+     * @return number of loads from Jira that returned the cached user unchanged.
+     */
+    long getUnchangedLoads() {
+        return mUnchangedLoads.get();
+    }
+
+    /**
+     * @return number of misses answered by the shared cache instead of Jira.
+     */
+    long getSharedHits() {
+        return mSharedHits.get();
+    }
+
+    /**
+     * @return number of failed reads and writes of the shared cache.
+     */
+    long getSharedFailures() {
+        return mSharedFailures.get();
+    }
+
+    /**
+     * @return the durations of all loads from Jira, including background refreshes.
+     */
+    JiraLatencyHistogram getLoadTimes() {
+        return mLoadTimes;
+    }
+
+    /**
+     * @return the current invalidation mark, taken before a bulk load and passed to {@link #putAll(Map, long)} or
+     *         {@link #renewAll(Iterable, long)} afterwards.
+     */
+    long getInvalidationMark() {
+        return mInvalidations.get();
+    }
+
+    /**
+     * Adds users that have been loaded in bulk, i.E. by the {@link JiraWarmUp}. Users that have been invalidated since
+     * the load started are skipped.
+     *
+     * @param pUsers
+     *            the users by their username.
+     * @param pMark
+     *            the {@link #getInvalidationMark()} before the load started.
+     */
+    void putAll(Map<String, JiraUser> pUsers, long pMark) {
+        final long now = System.currentTimeMillis();
+        for (Map.Entry<String, JiraUser> current : pUsers.entrySet()) {
+            final Entry entry = new Entry(current.getValue(), now + mTtlInMS, now + (long) (mTtlInMS * REFRESH_AHEAD_RATIO), now + mTtlInMS + mGracePeriodInMS);
+            final String key = key(current.getKey());
+            synchronized (mWriteLock) {
+                if (!isInvalidatedSince(key, pMark)) {
+                    mEntries.put(key, entry);
+                    evictIfFull();
+                }
+            }
+        }
+    }
+
+    /**
+     * Renews the TTL of cached users that have been confirmed in bulk without a change, i.E. by the {@link JiraWarmUp}.
+     * Users that are not cached, are unknown or have been invalidated since the load started are skipped.
+     *
+     * @param pUsernames
+     *            the users to renew.
+     * @param pMark
+     *            the {@link #getInvalidationMark()} before the load started.
+     */
+    void renewAll(Iterable<String> pUsernames, long pMark) {
+        final long now = System.currentTimeMillis();
+        synchronized (mWriteLock) {
+            for (String current : pUsernames) {
+                final String key = key(current);
+                final Entry cached = mEntries.get(key);
+                if (cached != null && cached.mUser != null && !isInvalidatedSince(key, pMark)) {
+                    mEntries.put(key, new Entry(cached.mUser, now + mTtlInMS, now + (long) (mTtlInMS * REFRESH_AHEAD_RATIO), now + mTtlInMS + mGracePeriodInMS));
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds users from a {@link JiraSnapshot}. They count as expired, so they are refreshed from Jira on first use, but
+     * they are served until the given time if Jira can not be asked. Users that are already cached are kept.
+     *
+     * @param pUsers
+     *            the users by their username.
+     * @param pServableUntil
+     *            time in MS until the users may be served without Jira.
+     */
+    void restore(Map<String, JiraUser> pUsers, long pServableUntil) {
+        final long now = System.currentTimeMillis();
+        synchronized (mWriteLock) {
+            for (Map.Entry<String, JiraUser> current : pUsers.entrySet()) {
+                final String key = key(current.getKey());
+                if (!mEntries.containsKey(key)) {
+                    mEntries.put(key, new Entry(current.getValue(), now, now, pServableUntil));
+                }
+            }
+            evictIfFull();
+        }
+    }
+
+    /**
+     * @return a copy of all cached users that exist in Jira by their {@link #key(String)}, including expired ones.
+     */
+    Map<String, JiraUser> getUsers() {
+        final Map<String, JiraUser> users = new HashMap<String, JiraUser>();
+        for (Map.Entry<String, Entry> current : mEntries.entrySet()) {
+            if (current.getValue().mUser != null) {
+                users.put(current.getKey(), current.getValue().mUser);
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Removes a user from the cache and from the shared cache, so that it is loaded from Jira again on the next call of
+     * every controller.
+     *
+     * @param pUsername
+     *            the user to remove.
+     */
+    void invalidate(String pUsername) {
+        final String key = key(pUsername);
+        evict(key);
+        if (mShared != null) {
+            try {
+                mShared.invalidate(key, System.currentTimeMillis());
+            } catch (IOException e) {
+                mSharedFailures.incrementAndGet();
+                LOG.log(Level.WARNING, "unable to invalidate user {0} in the shared cache: {1}", new Object[] {pUsername, e.getMessage()});
+            }
+        }
+    }
+
+    /**
+     * Removes a user from this cache only.
+     *
+     * @param pUsername
+     *            the user to remove.
+     */
+    void evict(String pUsername) {
+        final String key = key(pUsername);
+        synchronized (mWriteLock) {
+            final long mark = mInvalidations.incrementAndGet();
+            if (mInvalidatedAt.size() >= MAX_INVALIDATED) {
+                // forgetting the users is safe if the invalidation counts for all of them.
+                mInvalidatedAt.clear();
+                mAllInvalidatedAt = mark;
+            } else {
+                mInvalidatedAt.put(key, mark);
+            }
+            mEntries.remove(key);
+        }
+    }
+
+    /**
+     * Removes the users that have been invalidated in the shared cache since the previous call.
+     *
+     * @return the removed users.
+     */
+    Collection<String> syncShared() {
+        if (mShared == null) {
+            return Collections.emptyList();
+        }
+        try {
+            final Collection<String> invalidated = mShared.pollInvalidations();
+            for (String current : invalidated) {
+                evict(current);
+            }
+            return invalidated;
+        } catch (IOException e) {
+            mSharedFailures.incrementAndGet();
+            LOG.log(Level.WARNING, "unable to read the invalidations of the shared cache: {0}", e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Removes all users from the cache.
+     */
+    void invalidateAll() {
+        synchronized (mWriteLock) {
+            mInvalidatedAt.clear();
+            mAllInvalidatedAt = mInvalidations.incrementAndGet();
+            mEntries.clear();
+        }
+    }
+
+    int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * @param pUsername
+     *            the username as given by the user or as reported by Jira.
+     * @return the trimmed lower-case username that users are cached and throttled with.
+     */
+    static String key(String pUsername) {
+        return pUsername != null ? pUsername.trim().toLowerCase(Locale.ENGLISH) : "";
+    }
+
+    private void refreshAsync(final String pUsername) {
+        if (!mRefreshing.add(pUsername)) {
+            return;
+        }
+
+        try {
+            mRefreshExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        load(pUsername);
+                    } catch (AuthenticationServiceException e) {
+                        mRefreshFailures.incrementAndGet();
+                        mLastRefreshFailure = e.getMessage();
+                        LOG.log(Level.WARNING, "refreshing user {0} failed, serving the cached groups: {1}", new Object[] {pUsername, e.getMessage()});
+                    } catch (RuntimeException e) {
+                        mRefreshFailures.incrementAndGet();
+                        mLastRefreshFailure = e.getMessage();
+                        LOG.log(Level.WARNING, "refreshing user " + pUsername + " failed", e);
+                    } finally {
+                        mRefreshing.remove(pUsername);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            mRefreshing.remove(pUsername);
+            LOG.log(Level.FINE, "refresh queue is full, skipping refresh of {0}", pUsername);
+        }
+    }
+
+    private Entry load(String pUsername) {
+        Entry loaded;
+        final Entry cached = mEntries.get(pUsername);
+        final JiraUser previous = cached != null ? cached.mUser : null;
+        final long mark = getInvalidationMark();
+        final long start = System.currentTimeMillis();
+        final Entry shared = mShared != null ? loadShared(pUsername, previous, start) : null;
+        if (shared != null) {
+            mSharedHits.incrementAndGet();
+            store(pUsername, shared, mark);
+            return shared;
+        }
+
+        final long startInNS = System.nanoTime();
+        try {
+            final JiraUser user = mLoader.load(pUsername, previous);
+            if (user == previous) {
+                mUnchangedLoads.incrementAndGet();
+            }
+            loaded = new Entry(user, start + mTtlInMS, start + (long) (mTtlInMS * REFRESH_AHEAD_RATIO), start + mTtlInMS + mGracePeriodInMS);
+        } catch (UsernameNotFoundException e) {
+            LOG.log(Level.FINE, "remembering unknown user {0}", pUsername);
+            final long expiresAt = System.currentTimeMillis() + mNotFoundTtlInMS;
+            loaded = new Entry(null, expiresAt, expiresAt, expiresAt);
+        } catch (RuntimeException e) {
+            mLoadFailures.incrementAndGet();
+            throw e;
+        } finally {
+            mLoadTimes.record(System.nanoTime() - startInNS);
+        }
+
+        // the shared cache rejects a stale load by its version, so it is only published if it is cached here.
+        if (store(pUsername, loaded, mark) && mShared != null) {
+            publish(pUsername, loaded, start);
+        }
+        return loaded;
+    }
+
+    /**
+     * Caches a loaded user unless it has been invalidated since the load started.
+     *
+     * @return TRUE if the user has been cached.
+     */
+    private boolean store(String pUsername, Entry pLoaded, long pMark) {
+        synchronized (mWriteLock) {
+            if (isInvalidatedSince(pUsername, pMark)) {
+                LOG.log(Level.FINE, "user {0} was invalidated while it was loaded, not caching it", pUsername);
+                return false;
+            }
+            mEntries.put(pUsername, pLoaded);
+            evictIfFull();
+            return true;
+        }
+    }
+
+    /**
+     * Evicts the least recently used tenth of the entries if the cache has grown beyond its maximum size. The last uses
+     * are sorted once per batch instead of keeping the entries in access order on every hit. Must be called while
+     * holding the write lock.
+     */
+    private void evictIfFull() {
+        final int size = mEntries.size();
+        if (size <= mMaxEntries) {
+            return;
+        }
+
+        final List<Map.Entry<String, Entry>> entries = new ArrayList<Map.Entry<String, Entry>>(mEntries.entrySet());
+        final long[] accessed = new long[entries.size()];
+        for (int i = 0; i < accessed.length; i++) {
+            accessed[i] = entries.get(i).getValue().mLastAccess;
+        }
+        Arrays.sort(accessed);
+        final int excess = Math.min(size - mMaxEntries + mMaxEntries / EVICTION_DIVISOR, accessed.length);
+        final long threshold = accessed[excess - 1];
+
+        int evicted = 0;
+        for (Map.Entry<String, Entry> current : entries) {
+            if (evicted < excess && current.getValue().mLastAccess <= threshold && mEntries.remove(current.getKey(), current.getValue())) {
+                evicted++;
+            }
+        }
+        mEvictions.addAndGet(evicted);
+    }
+
+    /**
+     * Must be called while holding the write lock, together with the put that depends on it.
+     */
+    private boolean isInvalidatedSince(String pUsername, long pMark) {
+        if (mAllInvalidatedAt > pMark) {
+            return true;
+        }
+        final Long invalidatedAt = mInvalidatedAt.get(pUsername);
+        return invalidatedAt != null && invalidatedAt > pMark;
+    }
+
+    /**
+     * @return the entry of the shared cache or <code>null</code> if there is none that is not yet due for a refresh.
+     */
+    private Entry loadShared(String pUsername, JiraUser pPrevious, long pNow) {
+        final JiraSharedCache.Entry shared;
+        try {
+            shared = mShared.get(pUsername);
+        } catch (IOException e) {
+            mSharedFailures.incrementAndGet();
+            LOG.log(Level.WARNING, "unable to read user {0} from the shared cache: {1}", new Object[] {pUsername, e.getMessage()});
+            return null;
+        }
+        if (shared == null || shared.isInvalidated()) {
+            return null;
+        } else if (!shared.isFound()) {
+            return pNow < shared.getExpiresAt() ? new Entry(null, shared.getExpiresAt(), shared.getExpiresAt(), shared.getExpiresAt()) : null;
+        }
+
+        // a shared user that is due for a refresh is loaded from Jira, so the refresh ahead still keeps it fresh.
+        final long refreshAt = shared.getVersion() + (long) (mTtlInMS * REFRESH_AHEAD_RATIO);
+        if (pNow >= refreshAt) {
+            return null;
+        }
+        final List<GrantedAuthority> groups = new ArrayList<GrantedAuthority>(shared.getGroups().size());
+        for (String current : shared.getGroups()) {
+            groups.add(JiraAuthorities.intern(current));
+        }
+        final JiraAuthoritySet authorities = JiraAuthorities.forGroups(groups);
+        final JiraUser user;
+        if (pPrevious != null && pPrevious.getAuthoritySet() == authorities && shared.getName().equals(pPrevious.getUsername())) {
+            mUnchangedLoads.incrementAndGet();
+            user = pPrevious;
+        } else {
+            user = new JiraUser(shared.getName(), authorities, null);
+        }
+        final long expiresAt = Math.min(shared.getExpiresAt(), shared.getVersion() + mTtlInMS);
+        return new Entry(user, expiresAt, refreshAt, expiresAt + mGracePeriodInMS);
+    }
+
+    /**
+     * Stores a user that has been loaded from Jira in the shared cache, unless another controller has stored a newer
+     * version or the user has been invalidated since the load started.
+     */
+    private void publish(String pUsername, Entry pLoaded, long pVersion) {
+        final JiraSharedCache.Entry entry;
+        if (pLoaded.mUser != null) {
+            final List<String> groups = new ArrayList<String>();
+            for (GrantedAuthority current : pLoaded.mUser.getAuthorities()) {
+                if (current != SecurityRealm.AUTHENTICATED_AUTHORITY) {
+                    groups.add(current.getAuthority());
+                }
+            }
+            entry = JiraSharedCache.Entry.found(pLoaded.mUser.getUsername(), groups, pVersion, pLoaded.mExpiresAt);
+        } else {
+            entry = JiraSharedCache.Entry.notFound(pVersion, pLoaded.mExpiresAt);
+        }
+
+        try {
+            if (!mShared.put(pUsername, entry)) {
+                LOG.log(Level.FINE, "the shared cache has a newer version of user {0}", pUsername);
+            }
+        } catch (IOException e) {
+            mSharedFailures.incrementAndGet();
+            LOG.log(Level.WARNING, "unable to write user {0} to the shared cache: {1}", new Object[] {pUsername, e.getMessage()});
+        }
+    }
+
+    private Entry lookup(String pUsername, long pNow) {
+        final Entry cached = mEntries.get(pUsername);
+        if (cached != null) {
+            cached.touch(pNow);
+        }
+        return cached;
+    }
+
+    /**
+     * A cached user. A <code>null</code> user marks a user that does not exist in Jira.
+     */
+    private static final class Entry {
+
+        private final JiraUser mUser;
+        private final long mExpiresAt;
+        private final long mRefreshAt;
+        private final long mServableUntil;
+
+        /** Time in MS of the last use, only approximately exact and written without a lock. */
+        private volatile long mLastAccess = System.currentTimeMillis();
+
+        Entry(JiraUser pUser, long pExpiresAt, long pRefreshAt, long pServableUntil) {
+            this.mUser = pUser;
+            this.mExpiresAt = pExpiresAt;
+            this.mRefreshAt = pRefreshAt;
+            this.mServableUntil = pServableUntil;
+        }
+
+        void touch(long pNow) {
+            if (pNow - mLastAccess >= ACCESS_RESOLUTION_MS) {
+                mLastAccess = pNow;
+            }
+        }
+
+        boolean isExpired(long pNow) {
+            return pNow >= mExpiresAt;
+        }
+
+        boolean isRefreshDue(long pNow) {
+            return mUser != null && pNow >= mRefreshAt;
+        }
+
+        /** Only users that have been found are served after their expiry, unknown users are always asked again. */
+        boolean isServable(long pNow) {
+            return mUser != null && pNow < mServableUntil;
+        }
+
+        JiraUser resolve(String pUsername) {
+            if (mUser == null) {
+                throw new UsernameNotFoundException("User does not exist: " + pUsername);
+            }
+            return mUser;
+        }
+    }
+
+}
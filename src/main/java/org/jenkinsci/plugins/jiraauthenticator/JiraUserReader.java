@@ -0,0 +1,158 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.acegisecurity.GrantedAuthority;
+
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Reads a user of the Jira REST API straight from the response stream. Only the <code>name</code> and the names of the
+ * groups are kept, everything else like avatars or the <code>self</code> URLs is skipped. The shared
+ * {@link #INSTANCE} holds no state.
+ * <p>
+ * A reader created with the previous version of a user makes the request conditional: the entity tag of the previous
+ * version is sent with <code>If-None-Match</code> and the groups that are read are compared with the previous
+ * authorities. If Jira answers with 304 Not Modified or with the same groups, the result is marked as unchanged, so
+ * the caller keeps the previous user instead of building a new authority set.
+ * <p>
+ * Jira returns at most one page of groups, the <code>size</code> of the group list tells whether there are more. The
+ * service then loads the other pages with {@link #readGroupPage(JsonReader, List)}.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+class JiraUserReader implements JiraAuthenticationService.ConditionalReader<JiraIdentity> {
+
+    static final JiraUserReader INSTANCE = new JiraUserReader(null);
+
+    private final JiraUser mPrevious;
+
+    /**
+     * @param pPrevious
+     *            the cached version of the user or <code>null</code>.
+     */
+    JiraUserReader(JiraUser pPrevious) {
+        this.mPrevious = pPrevious;
+    }
+
+    @Override
+    public String getVersion() {
+        return mPrevious != null ? mPrevious.getVersion() : null;
+    }
+
+    @Override
+    public JiraIdentity notModified() {
+        return new JiraIdentity(mPrevious.getUsername(), null, mPrevious.getVersion());
+    }
+
+    @Override
+    public JiraIdentity read(JsonReader pReader) throws IOException {
+        return read(pReader, null);
+    }
+
+    @Override
+    public JiraIdentity read(JsonReader pReader, String pVersion) throws IOException {
+        String name = null;
+        List<GrantedAuthority> groups = Collections.emptyList();
+        int total = -1;
+
+        pReader.beginObject();
+        while (pReader.hasNext()) {
+            final String field = pReader.nextName();
+            if ("name".equals(field)) {
+                name = pReader.nextString();
+            } else if ("groups".equals(field)) {
+                groups = new ArrayList<GrantedAuthority>();
+                total = readGroups(pReader, groups);
+            } else {
+                pReader.skipValue();
+            }
+        }
+        pReader.endObject();
+
+        if (total > groups.size()) {
+            // the entity tag only covers the first page, so a paged user is never loaded conditionally.
+            return new JiraIdentity(name, groups, null, total);
+        }
+        return new JiraIdentity(name, isUnchanged(name, groups) ? null : groups, pVersion, total);
+    }
+
+    /**
+     * Reads a further page of the groups of a user.
+     *
+     * @param pReader
+     *            the user with a page of its groups.
+     * @param pGroups
+     *            the groups read so far, the groups of the page are added.
+     * @return number of groups on the page.
+     */
+    static int readGroupPage(JsonReader pReader, List<GrantedAuthority> pGroups) throws IOException {
+        final int before = pGroups.size();
+        pReader.beginObject();
+        while (pReader.hasNext()) {
+            if ("groups".equals(pReader.nextName())) {
+                readGroups(pReader, pGroups);
+            } else {
+                pReader.skipValue();
+            }
+        }
+        pReader.endObject();
+        return pGroups.size() - before;
+    }
+
+    /**
+     * The previous authorities contain {@link hudson.security.SecurityRealm#AUTHENTICATED_AUTHORITY} besides the groups
+     * and no duplicates, so the groups are the same if all of them are contained and there is exactly one more
+     * authority.
+     */
+    private boolean isUnchanged(String pName, List<GrantedAuthority> pGroups) {
+        if (mPrevious == null || pName == null || !pName.equals(mPrevious.getUsername())) {
+            return false;
+        }
+
+        final JiraAuthoritySet previous = mPrevious.getAuthoritySet();
+        if (previous.size() != pGroups.size() + 1) {
+            return false;
+        }
+        for (GrantedAuthority current : pGroups) {
+            if (!previous.contains(current)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the groups of the list to the given groups.
+     *
+     * @return the <code>size</code> of the list in Jira, -1 if missing.
+     */
+    private static int readGroups(JsonReader pReader, List<GrantedAuthority> pGroups) throws IOException {
+        int size = -1;
+        pReader.beginObject();
+        while (pReader.hasNext()) {
+            final String field = pReader.nextName();
+            if ("items".equals(field)) {
+                pReader.beginArray();
+                while (pReader.hasNext()) {
+                    final String group = JiraAuthenticationService.readName(pReader);
+                    if (group != null) {
+                        pGroups.add(JiraAuthorities.intern(group));
+                    }
+                }
+                pReader.endArray();
+            } else if ("size".equals(field)) {
+                size = pReader.nextInt();
+            } else {
+                pReader.skipValue();
+            }
+        }
+        pReader.endObject();
+        return size;
+    }
+
+}
@@ -0,0 +1,281 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.acegisecurity.GrantedAuthority;
+
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+import hudson.security.SecurityRealm;
+import jenkins.model.Jenkins;
+
+/**
+ * Fills the user cache of the {@link JiraSecurityRealm} in bulk at startup and then in the configured interval. It
+ * pages through the members of all Jira groups with the technical user and builds the groups of every user from that,
+ * so that {@link JiraSecurityRealm#loadUserByUsername(String)} is served from the cache from the first request on. The
+ * members are also put into the group index of the realm.
+ * <p>
+ * Jira has no feed of changed memberships, so every run pages through all groups. Once a cache has been filled, the
+ * following runs only compare the members with the previous run: users whose memberships changed are rebuilt, the
+ * other users keep their cached instance and only get a new TTL.
+ * <p>
+ * The progress is logged to this class' logger and the last run is available through the getters.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+@Extension
+public class JiraWarmUp extends PeriodicWork {
+
+    /** Number of group members loaded with one request. */
+    static final int PAGE_SIZE = 50;
+
+    /** Number of groups loaded at the same time. */
+    static final int PARALLEL_GROUPS = 4;
+
+    private static final Logger LOG = Logger.getLogger(JiraWarmUp.class.getName());
+
+    private final AtomicBoolean mRunning = new AtomicBoolean();
+
+    /** The cache that has been filled last, a new cache is filled right away. */
+    private volatile JiraUserCache mLastCache;
+
+    /** The cache the last successful run has filled and the members it has loaded for it. */
+    private volatile JiraUserCache mSyncedCache;
+    private volatile Map<String, Set<String>> mSyncedMembers;
+    private volatile long mLastStart;
+    private volatile long mLastDuration;
+    private volatile int mLastUserCount;
+    private volatile String mProgress = "not started";
+
+    @Override
+    public long getRecurrencePeriod() {
+        return MIN;
+    }
+
+    @Override
+    public long getInitialDelay() {
+        return 0;
+    }
+
+    @Override
+    protected void doRun() {
+        final Jenkins jenkins = Jenkins.getInstance();
+        final SecurityRealm securityRealm = jenkins != null ? jenkins.getSecurityRealm() : null;
+        if (!(securityRealm instanceof JiraSecurityRealm)) {
+            return;
+        }
+
+        final JiraSecurityRealm realm = (JiraSecurityRealm) securityRealm;
+        final JiraUserCache cache = realm.getUserCache();
+        if (realm.getWarmUpInterval() <= 0 || cache == null) {
+            return;
+        }
+
+        final boolean due = cache != mLastCache || System.currentTimeMillis() >= mLastStart + TimeUnit.MINUTES.toMillis(realm.getWarmUpInterval());
+        if (due && mRunning.compareAndSet(false, true)) {
+            realm.getCallbackExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        warmUp(realm, cache);
+                    } finally {
+                        mRunning.set(false);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Loads the members of all groups and fills the cache with the resulting users. Up to {@link #PARALLEL_GROUPS}
+     * groups are loaded at the same time through the asynchronous service API. Nothing is added to the cache if a group
+     * can not be loaded or Jira does not list all groups, because the users would miss groups otherwise.
+     *
+     * @param pRealm
+     *            the realm to load the groups with.
+     * @param pCache
+     *            the cache to fill.
+     */
+    void warmUp(JiraSecurityRealm pRealm, JiraUserCache pCache) {
+        final JiraGroupIndex index = pRealm.getGroupIndex();
+        mLastCache = pCache;
+        mLastStart = System.currentTimeMillis();
+        final long mark = pCache.getInvalidationMark();
+        final long indexMark = index.getInvalidationMark();
+        try {
+            final JiraAuthenticationService service = pRealm.getService();
+            final List<String> groups = service.loadGroupNames();
+            LOG.log(Level.INFO, "warming up the Jira user cache with the members of {0} groups", groups.size());
+
+            final Map<String, Set<String>> members = new ConcurrentHashMap<String, Set<String>>();
+            final Semaphore window = new Semaphore(PARALLEL_GROUPS);
+            final AtomicInteger done = new AtomicInteger();
+            final List<ListenableFuture<Void>> loads = new ArrayList<ListenableFuture<Void>>();
+            for (final String group : groups) {
+                window.acquire();
+                // the pages of one group are loaded one after the other, so the set is never written concurrently.
+                final Set<String> groupMembers = new HashSet<String>();
+                final ListenableFuture<Void> load = loadMembers(service, group, 0, groupMembers, pRealm.getCallbackExecutor());
+                load.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        window.release();
+                        members.put(group, groupMembers);
+                        mProgress = "loaded " + done.incrementAndGet() + " of " + groups.size() + " groups";
+                        LOG.log(Level.FINE, mProgress);
+                    }
+                }, MoreExecutors.sameThreadExecutor());
+                loads.add(load);
+            }
+            JiraAuthenticationService.await(Futures.allAsList(loads));
+
+            final Map<String, Set<String>> previous = pCache == mSyncedCache ? mSyncedMembers : null;
+            final Set<String> changed = previous != null ? changedUsers(previous, members) : null;
+
+            final Map<String, List<GrantedAuthority>> authorities = new HashMap<String, List<GrantedAuthority>>();
+            for (Map.Entry<String, Set<String>> current : members.entrySet()) {
+                final GrantedAuthority authority = JiraAuthorities.intern(current.getKey());
+                for (String username : current.getValue()) {
+                    if (changed != null && !changed.contains(username)) {
+                        continue;
+                    }
+                    List<GrantedAuthority> userAuthorities = authorities.get(username);
+                    if (userAuthorities == null) {
+                        userAuthorities = new ArrayList<GrantedAuthority>();
+                        authorities.put(username, userAuthorities);
+                    }
+                    userAuthorities.add(authority);
+                }
+            }
+
+            final Map<String, JiraUser> users = new HashMap<String, JiraUser>();
+            for (Map.Entry<String, List<GrantedAuthority>> current : authorities.entrySet()) {
+                users.put(current.getKey(), new JiraUser(current.getKey(), JiraAuthorities.forGroups(current.getValue())));
+            }
+            if (changed != null) {
+                final Set<String> unchanged = new HashSet<String>();
+                for (Set<String> current : members.values()) {
+                    unchanged.addAll(current);
+                }
+                unchanged.removeAll(changed);
+                pCache.renewAll(unchanged, mark);
+                for (String username : changed) {
+                    if (!users.containsKey(username)) {
+                        // the user has left all groups, its remaining groups are loaded on demand.
+                        pCache.invalidate(username);
+                    }
+                }
+            }
+            pCache.putAll(users, mark);
+            index.putAll(members, indexMark);
+            mSyncedMembers = members;
+            mSyncedCache = pCache;
+
+            mLastUserCount = users.size();
+            mLastDuration = System.currentTimeMillis() - mLastStart;
+            mProgress = "finished: " + (changed != null ? mLastUserCount + " changed users" : mLastUserCount + " users") + " of " + groups.size() + " groups in "
+                    + mLastDuration + "ms";
+            LOG.log(Level.INFO, "warm-up of the Jira user cache " + mProgress);
+        } catch (Exception e) {
+            mLastDuration = System.currentTimeMillis() - mLastStart;
+            mProgress = "failed: " + e.getMessage();
+            LOG.log(Level.WARNING, "warm-up of the Jira user cache failed", e);
+        }
+    }
+
+    /**
+     * Compares the members of the last run with the members that have just been loaded. Groups that have not changed
+     * get the set of the last run back, so the index keeps the instance and the new set can be collected.
+     *
+     * @param pPrevious
+     *            the members of the last run by group name.
+     * @param pMembers
+     *            the members that have just been loaded by group name.
+     * @return the users that have joined or left a group.
+     */
+    static Set<String> changedUsers(Map<String, Set<String>> pPrevious, Map<String, Set<String>> pMembers) {
+        final Set<String> changed = new HashSet<String>();
+        for (Map.Entry<String, Set<String>> current : pMembers.entrySet()) {
+            final Set<String> before = pPrevious.get(current.getKey());
+            if (before == null) {
+                changed.addAll(current.getValue());
+            } else if (before.equals(current.getValue())) {
+                current.setValue(before);
+            } else {
+                for (String username : current.getValue()) {
+                    if (!before.contains(username)) {
+                        changed.add(username);
+                    }
+                }
+                for (String username : before) {
+                    if (!current.getValue().contains(username)) {
+                        changed.add(username);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, Set<String>> current : pPrevious.entrySet()) {
+            if (!pMembers.containsKey(current.getKey())) {
+                changed.addAll(current.getValue());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Loads all pages of a group, the next page is requested once the previous one has been read. The next request is
+     * sent from the given executor, so an I/O thread never waits for the bulkhead.
+     */
+    private static ListenableFuture<Void> loadMembers(final JiraAuthenticationService pService, final String pGroupname, final int pStartAt,
+            final Set<String> pMembers, final Executor pExecutor) {
+        final ListenableFuture<Boolean> page = pService.loadGroupMembersAsync(pGroupname, pStartAt, PAGE_SIZE, new JiraAuthenticationService.MemberVisitor() {
+            @Override
+            public void member(String pGroup, String pUsername) {
+                pMembers.add(pUsername);
+            }
+        });
+
+        return Futures.transform(page, new AsyncFunction<Boolean, Void>() {
+            @Override
+            public ListenableFuture<Void> apply(Boolean pMorePages) {
+                return pMorePages ? loadMembers(pService, pGroupname, pStartAt + PAGE_SIZE, pMembers, pExecutor) : Futures.<Void> immediateFuture(null);
+            }
+        }, pExecutor);
+    }
+
+    public long getLastStart() {
+        return mLastStart;
+    }
+
+    public long getLastDuration() {
+        return mLastDuration;
+    }
+
+    public int getLastUserCount() {
+        return mLastUserCount;
+    }
+
+    public String getProgress() {
+        return mProgress;
+    }
+
+}
@@ -0,0 +1,221 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import hudson.Extension;
+import hudson.model.UnprotectedRootAction;
+import hudson.security.SecurityRealm;
+import hudson.security.csrf.CrumbExclusion;
+import hudson.util.Secret;
+import jenkins.model.Jenkins;
+
+/**
+ * Receives the user and group webhooks of Jira at <code>JENKINS_URL/jira-authenticator-webhook/</code> and drops the
+ * affected users and groups from the caches of the {@link JiraSecurityRealm}, so that changed memberships are picked up
+ * on the next call instead of after the TTL.
+ * <p>
+ * The endpoint is disabled until a webhook secret is configured. A request is accepted if it carries an
+ * <code>X-Hub-Signature: sha256=...</code> HMAC of the body with the secret, or the secret as <code>token</code> query
+ * parameter for Jira versions that can not sign their webhooks.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+@Extension
+public class JiraWebhook implements UnprotectedRootAction {
+
+    static final String URL_NAME = "jira-authenticator-webhook";
+
+    private static final String SIGNATURE_HEADER = "X-Hub-Signature";
+    private static final String SIGNATURE_PREFIX = "sha256=";
+    private static final String TOKEN_PARAMETER = "token";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    /** Jira's webhooks are a few KB, larger bodies are rejected without reading them. */
+    private static final int MAX_BODY_SIZE = 64 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Logger LOG = Logger.getLogger(JiraWebhook.class.getName());
+
+    private final AtomicLong mEvents = new AtomicLong();
+    private final AtomicLong mRejected = new AtomicLong();
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    /**
+     * @return number of webhooks that have been applied.
+     */
+    public long getEvents() {
+        return mEvents.get();
+    }
+
+    /**
+     * @return number of webhooks that have been rejected because of a missing or wrong signature.
+     */
+    public long getRejected() {
+        return mRejected.get();
+    }
+
+    @RequirePOST
+    public HttpResponse doIndex(StaplerRequest pRequest) throws IOException {
+        final Jenkins jenkins = Jenkins.getInstance();
+        final SecurityRealm securityRealm = jenkins != null ? jenkins.getSecurityRealm() : null;
+        if (!(securityRealm instanceof JiraSecurityRealm)) {
+            return HttpResponses.notFound();
+        }
+        final JiraSecurityRealm realm = (JiraSecurityRealm) securityRealm;
+        final Secret secret = realm.getWebhookSecret();
+        if (secret == null || StringUtils.isEmpty(secret.getPlainText())) {
+            return HttpResponses.notFound();
+        }
+
+        final byte[] body = IOUtils.toByteArray(new BoundedInputStream(pRequest.getInputStream(), MAX_BODY_SIZE + 1));
+        if (body.length > MAX_BODY_SIZE) {
+            return HttpResponses.status(413);
+        }
+        if (!isAuthentic(secret.getPlainText(), body, pRequest.getHeader(SIGNATURE_HEADER), pRequest.getParameter(TOKEN_PARAMETER))) {
+            mRejected.incrementAndGet();
+            LOG.log(Level.WARNING, "rejected a Jira webhook from {0} without a valid signature", pRequest.getRemoteAddr());
+            return HttpResponses.status(403);
+        }
+
+        final Event event;
+        try {
+            event = Event.read(new JsonReader(new InputStreamReader(new ByteArrayInputStream(body), UTF8)));
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "unable to read a Jira webhook: " + e.getMessage(), e);
+            return HttpResponses.status(400);
+        } catch (IllegalStateException e) {
+            LOG.log(Level.WARNING, "unable to read a Jira webhook: " + e.getMessage(), e);
+            return HttpResponses.status(400);
+        }
+
+        LOG.log(Level.FINE, "Jira webhook {0} for user {1} and group {2}", new Object[] {event.mName, event.mUsername, event.mGroupname});
+        realm.onJiraEvent(event.mUsername, event.mGroupname);
+        mEvents.incrementAndGet();
+        return HttpResponses.ok();
+    }
+
+    /**
+     * Checks the HMAC of the body or the token in constant time.
+     */
+    static boolean isAuthentic(String pSecret, byte[] pBody, String pSignature, String pToken) {
+        final byte[] secret = pSecret.getBytes(UTF8);
+        if (pSignature != null && pSignature.startsWith(SIGNATURE_PREFIX)) {
+            try {
+                final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(new SecretKeySpec(secret, HMAC_ALGORITHM));
+                final byte[] expected = mac.doFinal(pBody);
+                final byte[] actual = decodeHex(pSignature.substring(SIGNATURE_PREFIX.length()));
+                return actual != null && MessageDigest.isEqual(expected, actual);
+            } catch (GeneralSecurityException e) {
+                LOG.log(Level.WARNING, "unable to verify the signature of a Jira webhook", e);
+                return false;
+            }
+        }
+        return pToken != null && MessageDigest.isEqual(secret, pToken.getBytes(UTF8));
+    }
+
+    private static byte[] decodeHex(String pHex) {
+        if (pHex.length() % 2 != 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[pHex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            final int high = Character.digit(pHex.charAt(2 * i), 16);
+            final int low = Character.digit(pHex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+
+    /**
+     * The parts of a Jira webhook that are used: the event name, the <code>user</code> and the <code>group</code>.
+     * Membership events carry both.
+     */
+    private static final class Event {
+
+        private String mName;
+        private String mUsername;
+        private String mGroupname;
+
+        static Event read(JsonReader pReader) throws IOException {
+            final Event event = new Event();
+            pReader.beginObject();
+            while (pReader.hasNext()) {
+                final String field = pReader.nextName();
+                if ("webhookEvent".equals(field) && pReader.peek() == JsonToken.STRING) {
+                    event.mName = pReader.nextString();
+                } else if ("user".equals(field) && pReader.peek() == JsonToken.BEGIN_OBJECT) {
+                    event.mUsername = JiraAuthenticationService.readName(pReader);
+                } else if ("group".equals(field) && pReader.peek() == JsonToken.BEGIN_OBJECT) {
+                    event.mGroupname = JiraAuthenticationService.readName(pReader);
+                } else {
+                    pReader.skipValue();
+                }
+            }
+            pReader.endObject();
+            return event;
+        }
+    }
+
+    /**
+     * Jira can not send a crumb, the webhook is authenticated by its signature instead.
+     */
+    @Extension
+    public static class CrumbExclusionImpl extends CrumbExclusion {
+
+        @Override
+        public boolean process(HttpServletRequest pRequest, HttpServletResponse pResponse, FilterChain pChain) throws IOException, ServletException {
+            final String path = pRequest.getPathInfo();
+            if (path != null && (path.equals("/" + URL_NAME) || path.startsWith("/" + URL_NAME + "/"))) {
+                pChain.doFilter(pRequest, pResponse);
+                return true;
+            }
+            return false;
+        }
+    }
+
+}
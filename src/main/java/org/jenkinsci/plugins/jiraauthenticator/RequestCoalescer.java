@@ -0,0 +1,63 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.acegisecurity.AuthenticationServiceException;
+
+/**
+ * Collapses concurrent calls for the same key into one. The first caller executes the call, all other callers that
+ * arrive while it is running wait for and share its result.
+ *
+ * @author stephan.watermeyer
+ *
+ * @param <K>
+ *            the key type, i.E. the username.
+ * @param <V>
+ *            the result type.
+ */
+class RequestCoalescer<K, V> {
+
+    private final ConcurrentMap<K, FutureTask<V>> mPending = new ConcurrentHashMap<K, FutureTask<V>>();
+
+    /**
+     * Executes the call or joins a pending call for the same key.
+     *
+     * @param pKey
+     *            the key that identifies identical calls.
+     * @param pCall
+     *            the call to execute.
+     * @return the result of the call.
+     */
+    V execute(final K pKey, final Callable<V> pCall) {
+        final FutureTask<V> task = new FutureTask<V>(pCall);
+        FutureTask<V> pending = mPending.putIfAbsent(pKey, task);
+        if (pending == null) {
+            pending = task;
+            try {
+                task.run();
+            } finally {
+                mPending.remove(pKey, task);
+            }
+        }
+
+        try {
+            return pending.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new AuthenticationServiceException("general error: " + cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("interrupted while waiting for Jira", e);
+        }
+    }
+
+}
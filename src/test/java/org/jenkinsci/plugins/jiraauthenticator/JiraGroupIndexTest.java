@@ -0,0 +1,92 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Checks that the {@link JiraGroupIndex} does not index a load that raced with an invalidation.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+public class JiraGroupIndexTest {
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void doesNotIndexLoadThatRacedWithInvalidation() throws Exception {
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger loads = new AtomicInteger();
+        final JiraGroupIndex index = new JiraGroupIndex(300, 30, 600, new JiraGroupIndex.Loader() {
+            @Override
+            public Set<String> load(String pGroupname) {
+                if (loads.incrementAndGet() == 1) {
+                    loading.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return Collections.singleton("bob");
+            }
+
+            @Override
+            public void checkExists(String pGroupname) {
+                // every group exists.
+            }
+        });
+
+        final Future<Set<String>> pending = mExecutor.submit(new Callable<Set<String>>() {
+            @Override
+            public Set<String> call() {
+                return index.getMembers("developers");
+            }
+        });
+        assertTrue(loading.await(10, TimeUnit.SECONDS));
+        index.invalidate("developers");
+        release.countDown();
+
+        assertEquals(Collections.singleton("bob"), pending.get(10, TimeUnit.SECONDS));
+        assertNull(index.getIndexedMembers("developers"));
+
+        index.getMembers("developers");
+        assertEquals(2, loads.get());
+        assertNotNull(index.getIndexedMembers("developers"));
+    }
+
+    @Test
+    public void bulkPutSkipsGroupsInvalidatedSinceTheMark() {
+        final JiraGroupIndex index = new JiraGroupIndex(300, 30, 600, null);
+        final long mark = index.getInvalidationMark();
+        index.invalidate("developers");
+
+        index.putAll(Collections.<String, Set<String>> singletonMap("developers", Collections.singleton("bob")), mark);
+        assertNull(index.getIndexedMembers("developers"));
+
+        index.putAll(Collections.<String, Set<String>> singletonMap("developers", Collections.singleton("bob")), index.getInvalidationMark());
+        assertNotNull(index.getIndexedMembers("developers"));
+    }
+
+}
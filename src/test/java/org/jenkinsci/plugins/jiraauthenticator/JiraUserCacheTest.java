@@ -0,0 +1,132 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.acegisecurity.GrantedAuthority;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Checks that the {@link JiraUserCache} does not cache a load that raced with an invalidation.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+public class JiraUserCacheTest {
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void cachesLoadedUser() {
+        final BlockingLoader loader = new BlockingLoader(false);
+        final JiraUserCache cache = newCache(loader);
+
+        cache.get("bob");
+        assertNotNull(cache.getIfPresent("bob"));
+        cache.get("bob");
+        assertEquals(1, loader.mLoads.get());
+    }
+
+    @Test
+    public void doesNotCacheLoadThatRacedWithInvalidation() throws Exception {
+        final BlockingLoader loader = new BlockingLoader(true);
+        final JiraUserCache cache = newCache(loader);
+
+        final Future<JiraUser> pending = mExecutor.submit(new Callable<JiraUser>() {
+            @Override
+            public JiraUser call() {
+                return cache.get("bob");
+            }
+        });
+        assertTrue(loader.mLoading.await(10, TimeUnit.SECONDS));
+        cache.invalidate("bob");
+        loader.mRelease.countDown();
+
+        // the waiting caller still gets the result, but it is not cached.
+        assertEquals("bob", pending.get(10, TimeUnit.SECONDS).getUsername());
+        assertNull(cache.getIfPresent("bob"));
+        assertEquals(0, cache.size());
+
+        cache.get("bob");
+        assertEquals(2, loader.mLoads.get());
+        assertNotNull(cache.getIfPresent("bob"));
+    }
+
+    @Test
+    public void invalidationMatchesUsernameRegardlessOfCase() {
+        final BlockingLoader loader = new BlockingLoader(false);
+        final JiraUserCache cache = newCache(loader);
+
+        cache.get(" Bob ");
+        assertNotNull(cache.getIfPresent("bob"));
+        cache.invalidate("bob");
+        assertNull(cache.getIfPresent("Bob"));
+    }
+
+    @Test
+    public void bulkPutSkipsUsersInvalidatedSinceTheMark() {
+        final JiraUserCache cache = newCache(new BlockingLoader(false));
+        final long mark = cache.getInvalidationMark();
+        cache.invalidate("bob");
+
+        cache.putAll(Collections.singletonMap("bob", user("bob")), mark);
+        assertNull(cache.getIfPresent("bob"));
+
+        cache.putAll(Collections.singletonMap("bob", user("bob")), cache.getInvalidationMark());
+        assertNotNull(cache.getIfPresent("bob"));
+    }
+
+    private static JiraUserCache newCache(JiraUserCache.Loader pLoader) {
+        return new JiraUserCache(300, 30, 100, 600, false, pLoader, null);
+    }
+
+    private static JiraUser user(String pUsername) {
+        return new JiraUser(pUsername, Collections.<GrantedAuthority> emptyList());
+    }
+
+    /**
+     * Counts the loads, the first one optionally waits until it is released.
+     */
+    private static final class BlockingLoader implements JiraUserCache.Loader {
+
+        private final boolean mBlockFirst;
+        private final AtomicInteger mLoads = new AtomicInteger();
+        private final CountDownLatch mLoading = new CountDownLatch(1);
+        private final CountDownLatch mRelease = new CountDownLatch(1);
+
+        BlockingLoader(boolean pBlockFirst) {
+            this.mBlockFirst = pBlockFirst;
+        }
+
+        @Override
+        public JiraUser load(String pUsername, JiraUser pPrevious) {
+            if (mLoads.incrementAndGet() == 1 && mBlockFirst) {
+                mLoading.countDown();
+                try {
+                    mRelease.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return user(pUsername);
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+package org.jenkinsci.plugins.jiraauthenticator;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.Charset;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+
+/**
+ * Checks the authentication of the {@link JiraWebhook}.
+ *
+ * @author stephan.watermeyer
+ *
+ */
+public class JiraWebhookTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String SECRET = "s3cr3t";
+    private static final byte[] BODY = "{\"webhookEvent\":\"user_updated\",\"user\":{\"name\":\"bob\"}}".getBytes(UTF8);
+
+    @Test
+    public void acceptsValidSignature() throws Exception {
+        assertTrue(JiraWebhook.isAuthentic(SECRET, BODY, "sha256=" + sign(SECRET, BODY), null));
+    }
+
+    @Test
+    public void acceptsUpperCaseSignature() throws Exception {
+        assertTrue(JiraWebhook.isAuthentic(SECRET, BODY, "sha256=" + sign(SECRET, BODY).toUpperCase(), null));
+    }
+
+    @Test
+    public void rejectsTamperedSignature() throws Exception {
+        final String signature = sign(SECRET, BODY);
+        final String tampered = (signature.charAt(0) == '0' ? '1' : '0') + signature.substring(1);
+        assertFalse(JiraWebhook.isAuthentic(SECRET, BODY, "sha256=" + tampered, null));
+    }
+
+    @Test
+    public void rejectsTamperedBody() throws Exception {
+        final byte[] tampered = "{\"webhookEvent\":\"user_updated\",\"user\":{\"name\":\"eve\"}}".getBytes(UTF8);
+        assertFalse(JiraWebhook.isAuthentic(SECRET, tampered, "sha256=" + sign(SECRET, BODY), null));
+    }
+
+    @Test
+    public void rejectsSignatureOfOtherSecret() throws Exception {
+        assertFalse(JiraWebhook.isAuthentic(SECRET, BODY, "sha256=" + sign("other", BODY), null));
+    }
+
+    @Test
+    public void rejectsOddLengthSignature() throws Exception {
+        assertFalse(JiraWebhook.isAuthentic(SECRET, BODY, "sha256=" + sign(SECRET, BODY).substring(1), null));
+    }
+
+    @Test
+    public void rejectsNonHexSignature() throws Exception {
+        final String signature = sign(SECRET, BODY);
+        assertFalse(JiraWebhook.isAuthentic(SECRET, BODY, "sha256=zz" + signature.substring(2), null));
+    }
+
+    @Test
+    public void rejectsEmptySignature() {
+        assertFalse(JiraWebhook.isAuthentic(SECRET, BODY, "sha256=", null));
+    }
+
+    @Test
+    public void signatureTakesPrecedenceOverToken() throws Exception {
+        assertFalse(JiraWebhook.isAuthentic(SECRET, BODY, "sha256=" + sign("other", BODY), SECRET));
+    }
+
+    @Test
+    public void acceptsTokenWithoutSignature() {
+        assertTrue(JiraWebhook.isAuthentic(SECRET, BODY, null, SECRET));
+    }
+
+    @Test
+    public void rejectsWrongToken() {
+        assertFalse(JiraWebhook.isAuthentic(SECRET, BODY, null, "s3cr3"));
+        assertFalse(JiraWebhook.isAuthentic(SECRET, BODY, null, SECRET + "x"));
+    }
+
+    @Test
+    public void rejectsRequestWithoutSignatureAndToken() {
+        assertFalse(JiraWebhook.isAuthentic(SECRET, BODY, null, null));
+    }
+
+    private static String sign(String pSecret, byte[] pBody) throws Exception {
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(pSecret.getBytes(UTF8), "HmacSHA256"));
+        final StringBuilder hex = new StringBuilder();
+        for (byte current : mac.doFinal(pBody)) {
+            hex.append(String.format("%02x", current & 0xff));
+        }
+        return hex.toString();
+    }
+
+}